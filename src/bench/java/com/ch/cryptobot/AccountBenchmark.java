@@ -0,0 +1,94 @@
+package com.ch.cryptobot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Loading an account and saving it in full, in each storage format
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountBenchmark
+{
+	@Param({ "json", "binary", "mapped" })
+	String format;
+
+	@Param({ "100", "10000" })
+	int trades;
+
+	Path dir;
+	AccountStore store;
+	Account account;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		dir = Files.createTempDirectory("cryptobot-bench");
+		store = AccountStore.create(dir, format);
+		account = createAccount(store, "bench", trades);
+		store.write(account);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		try (Stream<Path> files = Files.walk(dir))
+		{
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public Account load() throws IOException
+	{
+		return store.read("bench");
+	}
+
+	@Benchmark
+	public Account save() throws IOException
+	{
+		// Everything is written again, like the first save of an account
+		account.setStored(0, 0);
+		store.write(account);
+		return account;
+	}
+
+	static Account createAccount(AccountStore store, String name, int trades)
+	{
+		Account account = new Account(store, 823326124452478986L, 948059969754906634L, name);
+		Random random = new Random(1);
+		long timestamp = 1_650_000_000_000L;
+		long money = 1_000_000_00L;
+		long[] balances = new long[Crypto.values().length];
+		for (int i = 0; i < trades; i++)
+		{
+			Crypto crypto = Crypto.values()[random.nextInt(balances.length)];
+			boolean buy = balances[crypto.ordinal()] == 0 || random.nextBoolean();
+			long amount = 1 + random.nextInt(100_000_000);
+			if(!buy)
+				amount = Math.min(amount, balances[crypto.ordinal()]);
+			long price = 1 + random.nextInt(1_000_00);
+			long newMoney = buy ? money - price : money + price;
+			long newBalance = buy ? balances[crypto.ordinal()] + amount : balances[crypto.ordinal()] - amount;
+
+			account.addTransaction(new Transaction(timestamp += 1 + random.nextInt(3_600_000), money, newMoney, price,
+					balances[crypto.ordinal()], newBalance, amount, random.nextDouble() * 50_000, crypto, buy, random.nextInt(4) == 0));
+			money = newMoney;
+			balances[crypto.ordinal()] = newBalance;
+		}
+		account.setMoney(money);
+		for (Crypto crypto : Crypto.values())
+			account.setBalance(crypto, balances[crypto.ordinal()]);
+		account.addLoan(timestamp, 500_00);
+		return account;
+	}
+}
@@ -0,0 +1,60 @@
+package com.ch.cryptobot;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// The small steps every command goes through: finding the coin, reading a
+// time, formatting cash and splitting the message
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark
+{
+	@Param({ "BTC", "doge", "shiba inu", "bitcion" })
+	String coin;
+
+	CommandTrie<String> commands;
+
+	@Setup
+	public void setup()
+	{
+		commands = new CommandTrie<>();
+		for (String name : new String[] { "price", "coins", "account", "accounts", "buy", "sell", "in", "every", "jobs",
+				"cancel", "trades", "balance", "loan", "loans", "clone", "save", "timezone", "help" })
+			commands.put(name, name);
+	}
+
+	@Benchmark
+	public Crypto findCrypto()
+	{
+		return CryptoIndex.find(coin);
+	}
+
+	@Benchmark
+	public void getMinutes(Blackhole blackhole)
+	{
+		blackhole.consume(Engine.getMinutes("30"));
+		blackhole.consume(Engine.getMinutes("2h"));
+		blackhole.consume(Engine.getMinutes("5days"));
+	}
+
+	@Benchmark
+	public void cash(Blackhole blackhole)
+	{
+		blackhole.consume(Formats.cash(123_456_789L));
+		blackhole.consume(Formats.cash(5_00L));
+		blackhole.consume(Formats.cash(24691.3597));
+	}
+
+	@Benchmark
+	public String parseCommand()
+	{
+		CommandLine line = CommandLine.parse("!every 30m buy 0.5 " + coin, 1);
+		return commands.find(line, 0) + line.args().rest(3);
+	}
+}
@@ -0,0 +1,105 @@
+package com.ch.cryptobot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.text.DateFormat;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Cost of rendering a page of 1000 trades the way !trades does, with a
+// NumberFormat per amount and a SimpleDateFormat as before, against Formats.
+// One operation is the whole page, run with -prof gc for the bytes per page.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark
+{
+	static final int TRADES = 1000;
+
+	@Param({ "before", "after" })
+	String mode;
+
+	TransactionHistory history;
+	DateFormat dateFormat;
+	ZoneId zone;
+
+	@Setup
+	public void setup()
+	{
+		history = new TransactionHistory();
+		Random random = new Random(1);
+		long timestamp = System.currentTimeMillis() - TRADES * 60_000L;
+		long money = 1_000_000_00L;
+		for (int i = 0; i < TRADES; i++)
+		{
+			boolean buy = random.nextBoolean();
+			long price = random.nextInt(100_000_00);
+			money += buy ? -price : price;
+			history.add(timestamp += 60_000, money, price, random.nextInt(1_000_000_000), random.nextInt(100_000_000),
+					random.nextDouble() * 50_000, Crypto.values()[random.nextInt(Crypto.values().length)], buy, random.nextBoolean());
+		}
+		dateFormat = new SimpleDateFormat("yyyy-MM-dd hh:mm aa");
+		zone = ZoneId.systemDefault();
+	}
+
+	@Benchmark
+	public String render()
+	{
+		return mode.equals("before") ? renderBefore() : renderAfter();
+	}
+
+	static String cashFmt(double price)
+	{
+		String str = NumberFormat.getCurrencyInstance().format(price);
+		return str.endsWith(".00") ? str.substring(0, str.length() - 3) : str;
+	}
+
+	private String renderBefore()
+	{
+		StringBuilder sb = new StringBuilder();
+		TransactionHistory.Cursor transaction = history.cursor(history.size());
+		while (transaction.previous())
+		{
+			sb.append('`').append(dateFormat.format(new Date(transaction.timestamp()))).append("` ");
+			sb.append(transaction.isBuy() ? "Bought " : "Sold ");
+			sb.append('`');
+			Quantity.appendTo(sb, transaction.amount());
+			sb.append("` _").append(transaction.crypto().symbol).append(" for_ `");
+			sb.append(cashFmt(transaction.unitPrice()));
+			sb.append("` _ea. total_ `").append(cashFmt(Money.toDouble(transaction.price())));
+			sb.append("` Money: `").append(cashFmt(Money.toDouble(transaction.prevMoney())));
+			sb.append("` to `").append(cashFmt(Money.toDouble(transaction.newMoney()))).append("`\n");
+		}
+		return sb.toString();
+	}
+
+	private String renderAfter()
+	{
+		StringBuilder sb = new StringBuilder();
+		TransactionHistory.Cursor transaction = history.cursor(history.size());
+		while (transaction.previous())
+		{
+			sb.append('`');
+			Formats.appendTime(sb, transaction.timestamp(), zone).append("` ");
+			sb.append(transaction.isBuy() ? "Bought " : "Sold ");
+			sb.append('`');
+			Quantity.appendTo(sb, transaction.amount());
+			sb.append("` _").append(transaction.crypto().symbol).append(" for_ `");
+			Formats.appendCash(sb, transaction.unitPrice());
+			sb.append("` _ea. total_ `");
+			Formats.appendCash(sb, transaction.price());
+			sb.append("` Money: `");
+			Formats.appendCash(sb, transaction.prevMoney());
+			sb.append("` to `");
+			Formats.appendCash(sb, transaction.newMoney()).append("`\n");
+		}
+		return sb.toString();
+	}
+}
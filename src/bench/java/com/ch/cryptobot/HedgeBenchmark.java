@@ -0,0 +1,76 @@
+package com.ch.cryptobot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Price requests against three local PriceServers that each answer a few
+// percent of requests a second late: the first server alone, hedged across
+// all three, and the median of a majority. Sampled so the results carry the
+// p99 each way, hedged runs print their hedge rate and the first server's p99.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class HedgeBenchmark
+{
+	static final double SLOW_RATE = 0.03;
+	static final long SLOW_MILLIS = 1000;
+	static final Set<Crypto> CRYPTOS = EnumSet.of(Crypto.BITCOIN, Crypto.ETHEREUM, Crypto.DOGECOIN);
+
+	@Param({ "single", "hedged", "median" })
+	String mode;
+
+	List<PriceServer> servers;
+	PriceSource source;
+	HedgedPriceSource hedged;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		servers = new ArrayList<>();
+		List<PriceSource> sources = new ArrayList<>();
+		for (int i = 0; i < 3; i++)
+		{
+			PriceServer server = new PriceServer(0);
+			server.setDelay(1);
+			server.setSlow(SLOW_RATE, SLOW_MILLIS);
+			server.start();
+			servers.add(server);
+			sources.add(new HttpPriceSource(server.getUrl(), Duration.ofSeconds(2), Duration.ofSeconds(5)));
+		}
+
+		if(mode.equals("single"))
+			source = sources.get(0);
+		else
+			source = hedged = new HedgedPriceSource(sources, mode.equals("median"), 0.95, 500);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		if(hedged != null)
+		{
+			System.out.println(mode + ": " + String.format("%.1f", hedged.getHedgeRate() * 100) + "% hedged (" + hedged.getHedgeWins() +
+					" won), p99 " + Stats.duration(hedged.latency.getPercentile(0.99)) +
+					" vs " + Stats.duration(hedged.primaryLatency.getPercentile(0.99)) + " from the first server");
+		}
+		for (PriceServer server : servers)
+			server.stop();
+	}
+
+	@Benchmark
+	public Map<Crypto, Double> prices() throws IOException
+	{
+		return source.getPrices(CRYPTOS);
+	}
+}
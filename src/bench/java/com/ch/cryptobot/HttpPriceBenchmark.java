@@ -0,0 +1,94 @@
+package com.ch.cryptobot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Price requests against a local PriceServer: the old URLConnection that was
+// disconnected after every request, the shared HttpClient one request at a
+// time, and the HttpClient with a request per coin in flight at once, where
+// one operation is the whole round. Sampled so the results carry percentiles.
+// Each run gets a fresh server and prints how many connections it saw.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpPriceBenchmark
+{
+	static final Crypto[] CRYPTOS = Crypto.values();
+
+	@Param({ "urlconnection", "client", "async" })
+	String mode;
+
+	PriceServer server;
+	HttpPriceSource source;
+	List<CompletableFuture<Map<Crypto, Double>>> round;
+	int next;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		server = new PriceServer(0);
+		server.start();
+		source = new HttpPriceSource(server.getUrl(), Duration.ofSeconds(2), Duration.ofSeconds(5));
+		round = new ArrayList<>(CRYPTOS.length);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		long requests = server.getRequests();
+		long connections = server.getConnections();
+		System.out.println(mode + ": " + requests + " requests on " + connections + " connections");
+		server.stop();
+	}
+
+	@Benchmark
+	public Object price() throws IOException
+	{
+		Crypto crypto = CRYPTOS[next++ % CRYPTOS.length];
+		switch (mode)
+		{
+			case "urlconnection":
+				return urlConnection(crypto);
+			case "client":
+				return source.getPrice(crypto);
+			default:
+				return clientAsync();
+		}
+	}
+
+	// What HttpPriceSource did before, the stream is left open as it was
+	private byte[] urlConnection(Crypto crypto) throws IOException
+	{
+		HttpURLConnection conn = (HttpURLConnection) new URL(server.getUrl() + "/price?fsym=" + crypto.symbol + "&tsyms=USD").openConnection();
+		try
+		{
+			conn.connect();
+			return conn.getInputStream().readAllBytes();
+		}
+		finally
+		{
+			conn.disconnect();
+		}
+	}
+
+	private Object clientAsync()
+	{
+		round.clear();
+		for (Crypto crypto : CRYPTOS)
+			round.add(source.getPricesAsync(Collections.singleton(crypto)));
+		return CompletableFuture.allOf(round.toArray(new CompletableFuture<?>[0])).join();
+	}
+}
@@ -0,0 +1,87 @@
+package com.ch.cryptobot;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Per message cost of turning "!buy 0.5 btc" into a command and its arguments,
+// the old substring/split/HashMap way against CommandLine and CommandTrie.
+// One operation is one message, run with -prof gc for the bytes per message.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark
+{
+	static final String[] MESSAGES = {
+			"!buy 0.5 btc", "!SELL 12 dogecoin", "!price shiba inu", "!in 2h buy 100 ADA",
+			"!every 30m sell 0.001 BTC", "!trades 3", "!balance", "!bal", "!help", "!account Big-Money"
+	};
+	static final String[] NAMES = {
+			"price", "coins", "account", "accounts", "buy", "sell", "in", "every", "jobs", "cancel",
+			"trades", "balance", "loan", "loans", "clone", "save", "help"
+	};
+
+	@Param({ "split", "trie" })
+	String mode;
+
+	Map<String, Integer> map;
+	CommandTrie<Integer> trie;
+	int next;
+
+	@Setup
+	public void setup()
+	{
+		map = new HashMap<>();
+		trie = new CommandTrie<>();
+		for (int i = 0; i < NAMES.length; i++)
+		{
+			map.put(NAMES[i], i);
+			trie.put(NAMES[i], i);
+		}
+	}
+
+	@Benchmark
+	public void parse(Blackhole blackhole)
+	{
+		String message = MESSAGES[next++ % MESSAGES.length];
+		if(mode.equals("split"))
+			splitParse(message, blackhole);
+		else
+			trieParse(message, blackhole);
+	}
+
+	// What Main and Engine did before: substring, split, copyOfRange, lowercase, HashMap, then join the rest
+	private void splitParse(String message, Blackhole blackhole)
+	{
+		String cmd = message.substring(1);
+		String[] args = cmd.split(" ");
+		cmd = args[0];
+		args = Arrays.copyOfRange(args, 1, args.length);
+		blackhole.consume(map.get(cmd.toLowerCase(Locale.ROOT)));
+		if(args.length > 0)
+		{
+			StringBuilder sb = new StringBuilder();
+			for (String arg : args)
+				sb.append(arg).append(' ');
+			sb.setLength(sb.length() - 1);
+			blackhole.consume(sb.toString());
+		}
+	}
+
+	private void trieParse(String message, Blackhole blackhole)
+	{
+		CommandLine line = CommandLine.parse(message, 1);
+		blackhole.consume(trie.find(line, 0));
+		CommandLine args = line.args();
+		if(!args.isEmpty())
+			blackhole.consume(args.rest(0));
+	}
+}
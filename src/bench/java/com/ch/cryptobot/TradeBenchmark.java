@@ -0,0 +1,145 @@
+package com.ch.cryptobot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// A !buy and the !sell undoing it through a headless Engine, the way
+// ReplayDriver sends them: parsed, submitted to the command workers, routed
+// through the trie, the account taken under its lock from the cache, the
+// quote checked for age and the reply made. One operation waits for both
+// replies, with prices from FixedPrices.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TradeBenchmark
+{
+	static final long OWNER = 1000;
+	// Histories grow with every trade, past this a new account takes over
+	static final int MAX_TRADES = 10_000;
+
+	Path dir;
+	ReplayDriver.LocalGateway gateway;
+	Engine engine;
+	String account;
+	int accounts;
+	int trades;
+	long id;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		if(System.getProperty("cryptobot.commands.log") == null)
+			System.setProperty("cryptobot.commands.log", "false");
+		dir = Files.createTempDirectory("cryptobot-bench");
+		gateway = new ReplayDriver.LocalGateway();
+		engine = new Engine(gateway, dir, new FixedPrices());
+		newAccount();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		engine.shutdown();
+		try (Stream<Path> files = Files.walk(dir))
+		{
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public int roundTrip()
+	{
+		if(trades >= MAX_TRADES)
+			newAccount();
+		trades += 2;
+
+		return command("!buy 0.5 btc") + command("!sell 0.5 bitcoin");
+	}
+
+	// Length of the reply
+	private int command(String text)
+	{
+		BenchRequest request = new BenchRequest(++id, account);
+		if(!engine.submit(request, engine.parse(text, 1)))
+			throw new IllegalStateException("Command was turned away: " + text);
+		return request.replied.join();
+	}
+
+	private void newAccount()
+	{
+		account = "bench-" + accounts++;
+		engine.accounts.addAccount(account, OWNER, gateway.createChannel(account), acc -> acc.setMoney(1_000_000_000_00L));
+		trades = 0;
+	}
+
+	// Completes with the reply's length once the command has run
+	static class BenchRequest implements Request
+	{
+		private static final CompletableFuture<Void> DELIVERED = CompletableFuture.completedFuture(null);
+
+		final CompletableFuture<Integer> replied = new CompletableFuture<>();
+		private final long id;
+		private final String channel;
+		private int length;
+
+		BenchRequest(long id, String channel)
+		{
+			this.id = id;
+			this.channel = channel;
+		}
+
+		@Override
+		public long getId()
+		{
+			return id;
+		}
+
+		@Override
+		public long getUserId()
+		{
+			return OWNER;
+		}
+
+		@Override
+		public String getChannel()
+		{
+			return channel;
+		}
+
+		@Override
+		public boolean isAdmin()
+		{
+			return false;
+		}
+
+		@Override
+		public CompletableFuture<?> reply(CharSequence text)
+		{
+			length += text.length();
+			return DELIVERED;
+		}
+
+		@Override
+		public CompletableFuture<?> send(CharSequence text)
+		{
+			length += text.length();
+			return DELIVERED;
+		}
+
+		@Override
+		public void done()
+		{
+			replied.complete(length);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.ch.cryptobot;
+
+import com.hk.json.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Turning a trade into its stored forms and back
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark
+{
+	Transaction transaction;
+	JsonObject json;
+	String record;
+
+	@Setup
+	public void setup()
+	{
+		transaction = new Transaction(1_650_000_000_000L, 1_000_000_00L, 987_654_32L, 12_345_68L,
+				25_000_000L, 75_000_000L, 50_000_000L, 24691.3597, Crypto.BITCOIN, true, false);
+		json = transaction.toJson();
+		record = transaction.toRecord();
+	}
+
+	@Benchmark
+	public JsonObject toJson()
+	{
+		return transaction.toJson();
+	}
+
+	@Benchmark
+	public Transaction parseJson()
+	{
+		return new Transaction(json);
+	}
+
+	@Benchmark
+	public String toRecord()
+	{
+		return transaction.toRecord();
+	}
+
+	@Benchmark
+	public Transaction parseRecord()
+	{
+		return new Transaction(record);
+	}
+}
@@ -1,182 +1,145 @@
 package com.ch.cryptobot;
 
-import com.hk.json.*;
-
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.nio.file.Path;
 import java.util.*;
 
 class Account
 {
-	final Accounts accounts;
+	final AccountStore store;
 	final long ownerID;
 	final long channelID;
 	final String name;
-	private BigDecimal money;
-	private final Map<Crypto, BigDecimal> balances;
-	private final Map<Date, BigDecimal> loans;
-	private final List<Transaction> transactions;
-
-	Account(Accounts accounts, long ownerID, long channelID, String name)
+	// Cents, see Money
+	private long money;
+	// Coin units by Crypto ordinal, see Quantity
+	private final long[] balances;
+	private int held;
+	// Cents borrowed by timestamp
+	private final Map<Long, Long> loans;
+	private final TransactionHistory transactions;
+	private int stored;
+	private long storedEnd;
+	private boolean dirty;
+
+	Account(AccountStore store, long ownerID, long channelID, String name)
 	{
-		this.accounts = accounts;
+		this.store = store;
 		this.ownerID = ownerID;
 		this.channelID = channelID;
 		this.name = name;
 
-		money = BigDecimal.ZERO;
-		balances = new EnumMap<>(Crypto.class);
+		balances = new long[Crypto.values().length];
 		loans = new LinkedHashMap<>();
-		transactions = new LinkedList<>();
+		transactions = store.newHistory(name);
 	}
 
-	Account(Accounts accounts, JsonValue value) throws JsonAdaptationException
+	long getMoney()
 	{
-		this.accounts = accounts;
-
-		if(!value.isObject())
-			throw new JsonAdaptationException("expected json object");
-		JsonObject obj = value.getObject();
-
-		this.ownerID = obj.getLong("owner");
-		this.channelID = obj.getLong("channel");
-		this.name = obj.getString("name");
-
-		if(obj.contains("money"))
-			setMoney(new BigDecimal(obj.getString("money")));
+		return money;
+	}
 
-		balances = new EnumMap<>(Crypto.class);
-		if(obj.contains("balances"))
-		{
-			JsonObject balances = obj.getObject("balances");
-
-			Crypto crypto;
-			BigDecimal balance;
-			for (Map.Entry<String, JsonValue> entry : balances)
-			{
-				crypto = Crypto.bySymbol(entry.getKey());
-				balance = new BigDecimal(entry.getValue().getString());
-				setBalance(crypto, balance);
-			}
-		}
+	void setMoney(long money)
+	{
+		this.money = money;
+	}
 
-		loans = new LinkedHashMap<>();
-		if(obj.contains("loans"))
-		{
-			JsonObject loans = obj.getObject("loans");
-
-			Date timestamp;
-			BigDecimal amount;
-			for (Map.Entry<String, JsonValue> entry : loans)
-			{
-				timestamp = new Date(Long.parseLong(entry.getKey()));
-				amount = new BigDecimal(entry.getValue().getString());
-				this.loans.put(timestamp, amount);
-			}
-		}
+	boolean hasBalances()
+	{
+		return held > 0;
+	}
 
-		transactions = new LinkedList<>();
-		if(obj.contains("transactions"))
+	Set<Crypto> getHeldCryptos()
+	{
+		Set<Crypto> cryptos = EnumSet.noneOf(Crypto.class);
+		for (Crypto crypto : Crypto.values())
 		{
-			JsonArray transactions = obj.getArray("transactions");
-			for (JsonValue transaction : transactions)
-				this.transactions.add(new Transaction(transaction.getObject()));
+			if(balances[crypto.ordinal()] != 0)
+				cryptos.add(crypto);
 		}
+		return cryptos;
 	}
 
-	BigDecimal getMoney()
+	long getBalance(Crypto crypto)
 	{
-		return money;
+		return balances[crypto.ordinal()];
 	}
 
-	void setMoney(BigDecimal money)
+	void setBalance(Crypto crypto, long balance)
 	{
-		this.money = money.setScale(2, RoundingMode.FLOOR);
+		long old = balances[crypto.ordinal()];
+		if(old == 0 && balance != 0)
+			held++;
+		else if(old != 0 && balance == 0)
+			held--;
+		balances[crypto.ordinal()] = balance;
 	}
 
-	boolean hasBalances()
+	void addLoan(long timestamp, long amount)
 	{
-		return !balances.isEmpty();
+		loans.merge(timestamp, amount, Math::addExact);
 	}
 
-	BigDecimal getBalance(Crypto crypto)
+	Set<Map.Entry<Long, Long>> getLoans()
 	{
-		return balances.getOrDefault(crypto, BigDecimal.ZERO);
+		return loans.entrySet();
 	}
 
-	void setBalance(Crypto crypto, BigDecimal balance)
+	public void addTransaction(Transaction transaction)
 	{
-		if(balance.signum() == 0)
-			balances.remove(crypto);
-		else
-			balances.put(crypto, balance.stripTrailingZeros());
+		transactions.add(transaction);
 	}
 
-	void addLoan(Date timestamp, BigDecimal amount)
+	TransactionHistory getTransactions()
 	{
-		loans.put(timestamp, amount);
+		return transactions;
 	}
 
-	Set<Map.Entry<Date, BigDecimal>> getLoans()
+	// Changes are written by the account cache, see Accounts.flush
+	void markDirty()
 	{
-		return loans.entrySet();
+		dirty = true;
 	}
 
-	public void addTransaction(Transaction transaction)
+	boolean isDirty()
 	{
-		transactions.add(transaction);
+		return dirty;
 	}
 
-	List<Transaction> getTransactions()
+	// Rough heap footprint, used to weigh accounts in the cache
+	long estimateSize()
 	{
-		return transactions;
+		return 512L + balances.length * 8L + loans.size() * 96L + transactions.estimateSize();
 	}
 
 	void save()
 	{
-		Path path = accounts.accDir.resolve(name + ".json");
 		try
 		{
-			JsonObject obj = new JsonObject();
-
-			obj.put("owner", ownerID);
-			obj.put("channel", channelID);
-			obj.put("name", name);
-
-			obj.put("money", money.toPlainString());
-
-			if(!balances.isEmpty())
-			{
-				JsonObject balances = new JsonObject();
-				for (Map.Entry<Crypto, BigDecimal> entry : this.balances.entrySet())
-					balances.put(entry.getKey().symbol, entry.getValue().toPlainString());
-
-				obj.put("balances", balances);
-			}
-			if(!loans.isEmpty())
-			{
-				JsonObject loans = new JsonObject();
-				for (Map.Entry<Date, BigDecimal> entry : this.loans.entrySet())
-					loans.put(Long.toString(entry.getKey().getTime()), entry.getValue().toPlainString());
-
-				obj.put("loans", loans);
-			}
-			if(!transactions.isEmpty())
-			{
-				JsonArray transactions = new JsonArray();
-				for (Transaction transaction : this.transactions)
-					transactions.add(transaction.toJson());
-
-				obj.put("transactions", transactions);
-			}
-			Json.writer(path.toFile()).setPrettyPrint().put(obj).close();
+			store.write(this);
+			dirty = false;
 		}
-		catch (FileNotFoundException e)
+		catch (IOException e)
 		{
 			throw new UncheckedIOException("Issue saving account to file: " + name, e);
 		}
 	}
+
+	// How many trades the store holds and where its trade log ends after them,
+	// anything past that is rewritten by the next save
+	int getStored()
+	{
+		return stored;
+	}
+
+	long getStoredEnd()
+	{
+		return storedEnd;
+	}
+
+	void setStored(int stored, long storedEnd)
+	{
+		this.stored = stored;
+		this.storedEnd = storedEnd;
+	}
 }
@@ -0,0 +1,246 @@
+package com.ch.cryptobot;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Keeps recently used accounts parsed in memory. Changes are written back
+// when an account is evicted or the cache is flushed, and eviction is by
+// estimated memory so one huge trade history can't crowd out everything.
+// The cache's own lock only guards the map, loads and saves happen outside
+// it under the account's lock, so a slow disk holds up that account alone.
+class AccountCache
+{
+	private final AccountLocks locks;
+	private final long capacity;
+	private final LinkedHashMap<String, Entry> entries;
+	private final LatencyHistogram saves;
+	private long weight;
+
+	private long hits, misses, evictions, flushes;
+
+	// Accounts must only be fetched while holding their lock from locks,
+	// every write back is timed in saves
+	AccountCache(AccountLocks locks, long capacity, LatencyHistogram saves)
+	{
+		if(capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+
+		this.locks = locks;
+		this.capacity = capacity;
+		this.saves = saves;
+		entries = new LinkedHashMap<>(64, 0.75F, true);
+	}
+
+	Account get(String name, Function<String, Account> loader)
+	{
+		Entry entry;
+		synchronized (this)
+		{
+			entry = entries.get(name);
+			if(entry != null)
+			{
+				hits++;
+				reweigh(entry);
+			}
+			else
+				misses++;
+		}
+
+		// The caller holds the account's lock, so nobody else loads it meanwhile
+		if(entry == null)
+			entry = publish(loader.apply(name));
+		evict(entry);
+		return entry.account;
+	}
+
+	void put(Account account)
+	{
+		evict(publish(account));
+	}
+
+	private synchronized Entry publish(Account account)
+	{
+		Entry entry = new Entry(account);
+		Entry old = entries.put(account.name, entry);
+		if(old != null)
+			weight -= old.weight;
+
+		reweigh(entry);
+		return entry;
+	}
+
+	void flush()
+	{
+		List<Account> dirty = new ArrayList<>();
+		synchronized (this)
+		{
+			for (Entry entry : entries.values())
+			{
+				if(entry.account.isDirty())
+					dirty.add(entry.account);
+			}
+		}
+
+		// Saved outside the cache lock, since account holders may be waiting on it
+		for (Account account : dirty)
+		{
+			ReentrantLock lock = locks.get(account.name);
+			lock.lock();
+			try
+			{
+				if(account.isDirty())
+				{
+					save(account);
+					synchronized (this)
+					{
+						flushes++;
+					}
+				}
+			}
+			catch (UncheckedIOException ex)
+			{
+				System.err.println("Couldn't flush account: " + account.name);
+				ex.printStackTrace();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+
+	private void save(Account account)
+	{
+		long start = System.nanoTime();
+		account.save();
+		saves.recordSince(start);
+	}
+
+	// Accounts grow as they trade so their weight is refreshed on every access
+	private void reweigh(Entry entry)
+	{
+		long size = entry.account.estimateSize();
+		weight += size - entry.weight;
+		entry.weight = size;
+	}
+
+	// Picks the least recently used account under the cache lock, then saves it
+	// holding only its own lock and takes it out once it's on disk
+	private void evict(Entry keep)
+	{
+		while (true)
+		{
+			Entry victim = null;
+			ReentrantLock lock = null;
+			synchronized (this)
+			{
+				Iterator<Entry> itr = entries.values().iterator();
+				while (weight > capacity && itr.hasNext())
+				{
+					Entry entry = itr.next();
+					if(entry == keep)
+						continue;
+
+					// Accounts someone is working on stay, waiting for them could deadlock
+					lock = locks.get(entry.account.name);
+					if(lock.tryLock())
+					{
+						victim = entry;
+						break;
+					}
+				}
+			}
+			if(victim == null)
+				return;
+
+			try
+			{
+				if(victim.account.isDirty())
+				{
+					save(victim.account);
+					synchronized (this)
+					{
+						flushes++;
+					}
+				}
+				synchronized (this)
+				{
+					if(entries.remove(victim.account.name, victim))
+					{
+						weight -= victim.weight;
+						evictions++;
+					}
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+
+	synchronized long getHits()
+	{
+		return hits;
+	}
+
+	synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	synchronized double getHitRate()
+	{
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+	synchronized long getFlushes()
+	{
+		return flushes;
+	}
+
+	synchronized int getResidentCount()
+	{
+		return entries.size();
+	}
+
+	synchronized long getResidentSize()
+	{
+		return weight;
+	}
+
+	long getCapacity()
+	{
+		return capacity;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "AccountCache{accounts=" + entries.size() + ", size=" + weight + "/" + capacity +
+				"B, hits=" + hits + ", misses=" + misses + ", hitRate=" + String.format("%.3f", getHitRate()) +
+				", evictions=" + evictions + ", flushes=" + flushes + "}";
+	}
+
+	private static class Entry
+	{
+		final Account account;
+		long weight;
+
+		Entry(Account account)
+		{
+			this.account = account;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.ch.cryptobot;
+
+import com.hk.json.Json;
+import com.hk.json.JsonObject;
+import com.hk.json.JsonValue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Rewrites every account in main.json in another format and compares the two:
+//   java -cp CryptoBot.jar com.ch.cryptobot.AccountConverter <accounts dir> <to format> [from format]
+// Formats are json, binary and mapped, it converts from json unless converting to json, then from binary.
+// Each account is read back after writing and checked against the original.
+// The source format is also saved again to a temporary directory so both
+// formats get load and save timings.
+public class AccountConverter
+{
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length < 2 || args.length > 3)
+		{
+			System.err.println("Usage: AccountConverter <accounts dir> <json|binary|mapped> [json|binary|mapped]");
+			System.exit(1);
+		}
+		Path dir = Paths.get(args[0]);
+		String to = args[1].toLowerCase(Locale.ROOT);
+		String from = args.length > 2 ? args[2].toLowerCase(Locale.ROOT) : to.equals("json") ? "binary" : "json";
+
+		AccountStore source = AccountStore.create(dir, from);
+		AccountStore target = AccountStore.create(dir, to);
+		Path temp = Files.createTempDirectory("cryptobot-convert");
+		AccountStore copy = AccountStore.create(temp, from);
+
+		long trades = 0, sourceBytes = 0, targetBytes = 0;
+		long sourceLoad = 0, sourceSave = 0, targetLoad = 0, targetSave = 0;
+		int count = 0;
+		long start;
+		try
+		{
+			JsonObject main = Json.read(dir.resolve("main.json").toFile()).getObject();
+			for (Map.Entry<String, JsonValue> entry : main)
+			{
+				String name = entry.getKey();
+				if(!source.exists(name))
+				{
+					System.err.println("No " + from + " file for '" + name + "' account, skipping");
+					continue;
+				}
+
+				start = System.nanoTime();
+				Account account = source.read(name);
+				sourceLoad += System.nanoTime() - start;
+
+				account.setStored(0, 0);
+				start = System.nanoTime();
+				target.write(account);
+				targetSave += System.nanoTime() - start;
+
+				start = System.nanoTime();
+				Account converted = target.read(name);
+				targetLoad += System.nanoTime() - start;
+				compare(account, converted);
+
+				account.setStored(0, 0);
+				start = System.nanoTime();
+				copy.write(account);
+				sourceSave += System.nanoTime() - start;
+
+				sourceBytes += copy.size(name);
+				targetBytes += target.size(name);
+				trades += account.getTransactions().size();
+				count++;
+			}
+		}
+		finally
+		{
+			try (Stream<Path> files = Files.walk(temp))
+			{
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+
+		System.out.println("Converted " + count + " accounts with " + trades + " trades from " + from + " to " + to);
+		System.out.printf("%-8s %12s %10s %10s%n", "format", "bytes", "load ms", "save ms");
+		System.out.printf("%-8s %12d %10.1f %10.1f%n", from, sourceBytes, sourceLoad / 1e6, sourceSave / 1e6);
+		System.out.printf("%-8s %12d %10.1f %10.1f%n", to, targetBytes, targetLoad / 1e6, targetSave / 1e6);
+		if(sourceBytes > 0)
+			System.out.printf("%s is %.1f%% the size of %s%n", to, targetBytes * 100.0 / sourceBytes, from);
+	}
+
+	private static void compare(Account expected, Account actual)
+	{
+		boolean same = expected.ownerID == actual.ownerID && expected.channelID == actual.channelID &&
+				expected.name.equals(actual.name) && expected.getMoney() == actual.getMoney() &&
+				expected.getLoans().equals(actual.getLoans()) &&
+				expected.getTransactions().size() == actual.getTransactions().size();
+		for (Crypto crypto : Crypto.values())
+			same &= expected.getBalance(crypto) == actual.getBalance(crypto);
+		for (int i = 0; same && i < expected.getTransactions().size(); i++)
+			same = expected.getTransactions().get(i).toRecord().equals(actual.getTransactions().get(i).toRecord());
+
+		if(!same)
+			throw new IllegalStateException("Account '" + expected.name + "' changed while converting");
+	}
+}
@@ -0,0 +1,31 @@
+package com.ch.cryptobot;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// Striped locks serializing work on one account while different accounts
+// run in parallel. Two accounts only wait on each other if they share a stripe.
+class AccountLocks
+{
+	private final ReentrantLock[] stripes;
+	private final int mask;
+
+	AccountLocks(int concurrency)
+	{
+		int size = Integer.highestOneBit(Math.max(1, concurrency - 1)) << 1;
+		stripes = new ReentrantLock[size];
+		for (int i = 0; i < size; i++)
+			stripes[i] = new ReentrantLock();
+		mask = size - 1;
+	}
+
+	ReentrantLock get(String name)
+	{
+		int hash = name.hashCode();
+		return stripes[(hash ^ (hash >>> 16)) & mask];
+	}
+
+	int getStripes()
+	{
+		return stripes.length;
+	}
+}
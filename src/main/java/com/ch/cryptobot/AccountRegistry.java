@@ -0,0 +1,88 @@
+package com.ch.cryptobot;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Every account's owner and channel, with the accounts of each owner indexed.
+// Reads never lock. Adding an account and taking a snapshot hold the monitor,
+// so a snapshot has each account with its index entry or neither.
+class AccountRegistry
+{
+	private final Map<String, Entry> accounts;
+	private final Map<Long, Set<Entry>> owned;
+
+	AccountRegistry()
+	{
+		accounts = new ConcurrentHashMap<>();
+		owned = new ConcurrentHashMap<>();
+	}
+
+	Entry get(String name)
+	{
+		return accounts.get(name);
+	}
+
+	boolean contains(String name)
+	{
+		return accounts.containsKey(name);
+	}
+
+	// The owner's accounts by name, without looking at anyone else's
+	List<Entry> getOwned(long owner)
+	{
+		Set<Entry> entries = owned.get(owner);
+		if(entries == null)
+			return Collections.emptyList();
+
+		List<Entry> list = new ArrayList<>(entries);
+		list.sort(Comparator.comparing(entry -> entry.name));
+		return list;
+	}
+
+	int size()
+	{
+		return accounts.size();
+	}
+
+	// False if the name was taken in the meantime
+	synchronized boolean add(String name, long owner, long channel)
+	{
+		Entry entry = new Entry(name, owner, channel);
+		if(accounts.putIfAbsent(name, entry) != null)
+			return false;
+
+		owned.computeIfAbsent(owner, id -> ConcurrentHashMap.newKeySet()).add(entry);
+		return true;
+	}
+
+	synchronized void clear()
+	{
+		accounts.clear();
+		owned.clear();
+	}
+
+	List<Entry> snapshot()
+	{
+		List<Entry> list;
+		synchronized (this)
+		{
+			list = new ArrayList<>(accounts.values());
+		}
+		list.sort(Comparator.comparing(entry -> entry.name));
+		return list;
+	}
+
+	static class Entry
+	{
+		final String name;
+		final long owner;
+		final long channel;
+
+		Entry(String name, long owner, long channel)
+		{
+			this.name = name;
+			this.owner = owner;
+			this.channel = channel;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package com.ch.cryptobot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+// Where accounts live on disk. Each account is a small header rewritten on
+// every save plus a trade log that only ever has new trades appended, the
+// header counts the trades so a save that dies halfway commits nothing.
+interface AccountStore
+{
+	boolean exists(String name);
+
+	Account read(String name) throws IOException;
+
+	// Appends the trades after account.getStored() and rewrites the header
+	void write(Account account) throws IOException;
+
+	// Bytes on disk for the account, header and trade log
+	long size(String name) throws IOException;
+
+	// Where a new account of this store keeps its trades
+	default TransactionHistory newHistory(String name)
+	{
+		return new TransactionHistory();
+	}
+
+	static AccountStore create(Path dir, String format)
+	{
+		switch (format.toLowerCase(Locale.ROOT))
+		{
+			case "json":
+				return new JsonAccountStore(dir);
+			case "binary":
+				return new BinaryAccountStore(dir);
+			case "mapped":
+				return new MappedAccountStore(dir);
+			default:
+				throw new IllegalArgumentException("Unknown account format: " + format);
+		}
+	}
+}
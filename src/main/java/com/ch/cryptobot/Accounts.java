@@ -1,41 +1,44 @@
 package com.ch.cryptobot;
 
 import com.hk.json.*;
-import net.dv8tion.jda.api.entities.Category;
-import net.dv8tion.jda.api.entities.TextChannel;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 class Accounts
 {
 	final Engine engine;
 	final Path accDir;
-	private final Map<String, Long> accountMap;
-	private final Map<String, Long> channelMap;
+	final AccountRegistry registry;
+	final AccountStore store;
+	final AccountCache cache;
+	final AccountLocks locks;
 
 	Accounts(Engine engine, Path path) throws FileNotFoundException
 	{
 		this.engine = engine;
 		accDir = path;
-		accountMap = new HashMap<>();
-		channelMap = new HashMap<>();
+		registry = new AccountRegistry();
+		store = AccountStore.create(accDir, System.getProperty("cryptobot.accounts.format", "json"));
+		locks = new AccountLocks(Integer.getInteger("cryptobot.accounts.stripes", 256));
+		cache = new AccountCache(locks, Long.getLong("cryptobot.accounts.cache", 64L << 20), engine.stats.stage(Stats.Stage.SAVE));
 		load();
 
 		System.out.println("Using Account Directory: " + accDir);
 	}
 
-	public Set<String> getAccounts()
+	public List<AccountRegistry.Entry> getOwnedAccounts(long ownerID)
 	{
-		return accountMap.keySet();
+		return registry.getOwned(ownerID);
 	}
 
 	public String getInvalidMessage(String name)
@@ -54,55 +57,124 @@ class Accounts
 
 	public boolean hasAccount(String name)
 	{
-		return accountMap.containsKey(name);
+		return registry.contains(name);
 	}
 
+	// -1 if there's no such account
 	public long getOwner(String name)
 	{
-		return accountMap.get(name);
+		AccountRegistry.Entry entry = registry.get(name);
+		return entry == null ? -1 : entry.owner;
 	}
 
 	public long getChannel(String name)
 	{
-		return channelMap.get(name);
+		AccountRegistry.Entry entry = registry.get(name);
+		return entry == null ? -1 : entry.channel;
 	}
 
+	// -1 if someone else took the name while the channel was being created
 	public long createAccount(String name, long ownerID, Consumer<Account> consumer)
 	{
-		Category category = Objects.requireNonNull(engine.jda.getCategoryById(948059969754906634L));
+		long channelID = engine.gateway.createChannel(name);
+		Account account = addAccount(name, ownerID, channelID, consumer);
+		if(account == null)
+		{
+			engine.gateway.deleteChannel(channelID);
+			return -1;
+		}
+		save();
+
+		engine.gateway.send(channelID, "<@" + ownerID + ">");
 
-		TextChannel channel = category.createTextChannel(name).complete();
+		return channelID;
+	}
+
+	// Registers and writes a new account without saving main.json, which is
+	// up to the caller. Null if the name is taken
+	Account addAccount(String name, long ownerID, long channelID, Consumer<Account> consumer)
+	{
+		if(!registry.add(name, ownerID, channelID))
+			return null;
 
-		long channelID = channel.getIdLong();
-		accountMap.put(name, ownerID);
-		channelMap.put(name, channelID);
-		Account account = new Account(this, ownerID, channelID, name);
+		Account account = new Account(store, ownerID, channelID, name);
 		if(consumer != null)
 			consumer.accept(account);
 		account.save();
-		save();
+		ReentrantLock lock = locks.get(name);
+		lock.lock();
+		try
+		{
+			cache.put(account);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		return account;
+	}
+
+	// Every read and change of an account goes through these, one at a time per account.
+	// Waiting for the account and loading it count as the account stage, the action as compute
+	public void withAccount(String name, Consumer<Account> action)
+	{
+		long start = System.nanoTime();
+		ReentrantLock lock = locks.get(name);
+		lock.lock();
+		try
+		{
+			Account account = cache.get(name, this::read);
+			engine.stats.record(Stats.Stage.ACCOUNT, start);
+			start = System.nanoTime();
+			action.accept(account);
+			engine.stats.record(Stats.Stage.COMPUTE, start);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
 
-		channel.sendMessage("<@" + ownerID + ">").complete();
+	public <T> T fromAccount(String name, Function<Account, T> action)
+	{
+		long start = System.nanoTime();
+		ReentrantLock lock = locks.get(name);
+		lock.lock();
+		try
+		{
+			Account account = cache.get(name, this::read);
+			engine.stats.record(Stats.Stage.ACCOUNT, start);
+			start = System.nanoTime();
+			T result = action.apply(account);
+			engine.stats.record(Stats.Stage.COMPUTE, start);
+			return result;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
 
-		return channelID;
+	void flush()
+	{
+		cache.flush();
 	}
 
-	public Account load(String name)
+	private Account read(String name)
 	{
 		try
 		{
-			return new Account(this, Json.read(accDir.resolve(name + ".json").toFile()));
+			return store.read(name);
 		}
-		catch (FileNotFoundException e)
+		catch (IOException e)
 		{
-			throw new UncheckedIOException("Couldn't find file for account: " + name, e);
+			throw new UncheckedIOException("Couldn't read file for account: " + name, e);
 		}
 	}
 
 	void load() throws FileNotFoundException
 	{
-		channelMap.clear();
-		accountMap.clear();
+		registry.clear();
 
 		Path accs = accDir.resolve("main.json");
 		if(Files.exists(accs))
@@ -112,24 +184,23 @@ class Accounts
 			for (Map.Entry<String, JsonValue> entry : obj)
 			{
 				String name = entry.getKey();
-				Path path = accDir.resolve(name + ".json");
-				if(Files.exists(path))
+				if(store.exists(name))
 				{
 					JsonObject obj2 = entry.getValue().getObject();
 					long ownerID = obj2.getLong("owner");
 					long channelID = obj2.getLong("channel");
-					accountMap.put(name, ownerID);
-					channelMap.put(name, channelID);
+					registry.add(name, ownerID, channelID);
 				}
 				else
-					System.err.println(path + " does not exist! Ignoring '" + name + "' account...");
+					System.err.println("No file for '" + name + "' account in " + accDir + "! Ignoring it...");
 			}
 		}
 		else
 			System.out.println("No accounts.json!");
 	}
 
-	void save()
+	// One writer at a time, the registry stays readable while it writes
+	synchronized void save()
 	{
 		try
 		{
@@ -137,17 +208,17 @@ class Accounts
 			JsonObject obj = new JsonObject();
 
 			JsonObject obj2;
-			String name;
-			for (Map.Entry<String, Long> entry : accountMap.entrySet())
+			for (AccountRegistry.Entry entry : registry.snapshot())
 			{
-				name = entry.getKey();
 				obj2 = new JsonObject();
-				obj2.put("owner", entry.getValue());
-				obj2.put("channel", getChannel(name));
-				obj.put(name, obj2);
+				obj2.put("owner", entry.owner);
+				obj2.put("channel", entry.channel);
+				obj.put(entry.name, obj2);
 			}
 
-			Json.writer(accs.toFile()).setPrettyPrint().put(obj).close();
+			Path temp = accs.resolveSibling("main.json.tmp");
+			Json.writer(temp.toFile()).setPrettyPrint().put(obj).close();
+			Files.move(temp, accs, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 		}
 		catch (IOException ex)
 		{
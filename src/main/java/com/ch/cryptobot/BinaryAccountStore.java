@@ -0,0 +1,267 @@
+package com.ch.cryptobot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+// <name>.acc holds the account and <name>.trades its trade log, both binary
+// with a magic number and version up front. Numbers are varints, see Varint,
+// in the same fixed-point units as the JSON files: cents and coin units.
+// Accounts only found as JSON are read from there and saved back as binary.
+//
+// <name>.acc, version 1:
+//   magic, version, owner (8 bytes), channel (8 bytes), name, money,
+//   balance count, [coin, units]..., loan count, [timestamp, cents]...,
+//   trade count, trade log bytes
+// <name>.trades, version 1:
+//   magic, version, coin count, [coin]..., then per trade:
+//   timestamp - previous timestamp, new money, price, new balance, amount,
+//   unit price (8 bytes), coin index << 2 | auto << 1 | buy
+class BinaryAccountStore implements AccountStore
+{
+	static final int ACCOUNT_MAGIC = 0x43424143;
+	static final int TRADES_MAGIC = 0x4342544C;
+	static final byte VERSION = 1;
+	private static final int BUY = 1, AUTO = 2;
+	private static final Crypto[] CRYPTOS = Crypto.values();
+
+	final Path dir;
+	private final JsonAccountStore json;
+
+	BinaryAccountStore(Path dir)
+	{
+		this.dir = dir;
+		json = new JsonAccountStore(dir);
+	}
+
+	@Override
+	public boolean exists(String name)
+	{
+		return Files.exists(getPath(name)) || json.exists(name);
+	}
+
+	@Override
+	public Account read(String name) throws IOException
+	{
+		Path path = getPath(name);
+		if(!Files.exists(path) && json.exists(name))
+		{
+			Account account = json.read(name, this);
+			account.setStored(0, 0);
+			account.markDirty();
+			return account;
+		}
+
+		try
+		{
+			ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+			checkHeader(in, ACCOUNT_MAGIC, path);
+
+			long ownerID = in.getLong();
+			long channelID = in.getLong();
+			Account account = new Account(this, ownerID, channelID, Varint.readString(in));
+			account.setMoney(Varint.readSigned(in));
+
+			for (int i = Varint.readInt(in); i > 0; i--)
+				account.setBalance(getCrypto(Varint.readString(in), path), Varint.readSigned(in));
+			for (int i = Varint.readInt(in); i > 0; i--)
+				account.addLoan(Varint.read(in), Varint.readSigned(in));
+
+			int count = Varint.readInt(in);
+			long end = Varint.read(in);
+			readTrades(account, count, end);
+			return account;
+		}
+		catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex)
+		{
+			throw new IOException("Corrupt account file: " + path, ex);
+		}
+	}
+
+	void readTrades(Account account, int count, long end) throws IOException
+	{
+		if(count == 0)
+			return;
+
+		Path path = getLogPath(account.name);
+		byte[] bytes = Files.readAllBytes(path);
+		if(bytes.length < end)
+			throw new IOException("Expected " + end + " bytes of trades but found " + bytes.length + " in " + path);
+
+		ByteBuffer in = ByteBuffer.wrap(bytes, 0, (int) end);
+		checkHeader(in, TRADES_MAGIC, path);
+
+		Crypto[] cryptos = new Crypto[Varint.readInt(in)];
+		for (int i = 0; i < cryptos.length; i++)
+			cryptos[i] = getCrypto(Varint.readString(in), path);
+
+		TransactionHistory transactions = account.getTransactions();
+		long timestamp = 0, newMoney, price, newBalance, amount;
+		double unitPrice;
+		int coin;
+		for (int i = 0; i < count; i++)
+		{
+			timestamp += Varint.readSigned(in);
+			newMoney = Varint.readSigned(in);
+			price = Varint.read(in);
+			newBalance = Varint.readSigned(in);
+			amount = Varint.read(in);
+			unitPrice = in.getDouble();
+			coin = Varint.readInt(in);
+			transactions.add(timestamp, newMoney, price, newBalance, amount, unitPrice, cryptos[coin >>> 2],
+					(coin & BUY) != 0, (coin & AUTO) != 0);
+		}
+		if(in.hasRemaining())
+			throw new IOException("Expected " + count + " trades in " + end + " bytes of " + path);
+
+		// Anything past the committed trades was written by a save that never finished
+		if(bytes.length > end)
+		{
+			System.err.println("Dropping uncommitted trades at the end of " + path);
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+			{
+				channel.truncate(end);
+			}
+		}
+
+		// New trades are written with the coin indexes of today, a log from
+		// before the coin list changed is rewritten rather than appended to
+		if(Arrays.equals(cryptos, CRYPTOS))
+			account.setStored(count, end);
+		else
+			account.markDirty();
+	}
+
+	@Override
+	public void write(Account account) throws IOException
+	{
+		// The trades are only committed once the account file counting them is written
+		long end = writeTrades(account);
+		writeHeader(account, end);
+		account.setStored(account.getTransactions().size(), end);
+	}
+
+	// Returns where the trade log ends after the account's trades
+	long writeTrades(Account account) throws IOException
+	{
+		TransactionHistory transactions = account.getTransactions();
+		int stored = account.getStored();
+		if(stored == transactions.size())
+			return account.getStoredEnd();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream((transactions.size() - stored) * 24 + 256);
+		long end = account.getStoredEnd();
+		if(stored == 0)
+		{
+			end = 0;
+			writeMagic(out, TRADES_MAGIC);
+			Varint.write(out, CRYPTOS.length);
+			for (Crypto crypto : CRYPTOS)
+				Varint.writeString(out, crypto.symbol);
+		}
+
+		TransactionHistory.Cursor cursor = transactions.cursor(stored - 1);
+		long timestamp = stored == 0 ? 0 : cursor.timestamp();
+		while (cursor.next())
+		{
+			Varint.writeSigned(out, cursor.timestamp() - timestamp);
+			timestamp = cursor.timestamp();
+			Varint.writeSigned(out, cursor.newMoney());
+			Varint.write(out, cursor.price());
+			Varint.writeSigned(out, cursor.newBalance());
+			Varint.write(out, cursor.amount());
+			Varint.writeFixed(out, Double.doubleToRawLongBits(cursor.unitPrice()));
+			Varint.write(out, cursor.crypto().ordinal() << 2 | (cursor.isAuto() ? AUTO : 0) | (cursor.isBuy() ? BUY : 0));
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+		try (FileChannel channel = FileChannel.open(getLogPath(account.name), StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+		{
+			// Drops whatever an earlier failed save left behind
+			channel.truncate(end);
+			channel.position(end);
+			while (buffer.hasRemaining())
+				end += channel.write(buffer);
+		}
+		return end;
+	}
+
+	private void writeHeader(Account account, long end) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+		writeMagic(out, ACCOUNT_MAGIC);
+		Varint.writeFixed(out, account.ownerID);
+		Varint.writeFixed(out, account.channelID);
+		Varint.writeString(out, account.name);
+		Varint.writeSigned(out, account.getMoney());
+
+		Set<Crypto> held = account.getHeldCryptos();
+		Varint.write(out, held.size());
+		for (Crypto crypto : held)
+		{
+			Varint.writeString(out, crypto.symbol);
+			Varint.writeSigned(out, account.getBalance(crypto));
+		}
+		Varint.write(out, account.getLoans().size());
+		for (Map.Entry<Long, Long> entry : account.getLoans())
+		{
+			Varint.write(out, entry.getKey());
+			Varint.writeSigned(out, entry.getValue());
+		}
+
+		Varint.write(out, account.getTransactions().size());
+		Varint.write(out, end);
+
+		Path path = getPath(account.name);
+		Path temp = path.resolveSibling(account.name + ".acc.tmp");
+		Files.write(temp, out.toByteArray());
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Override
+	public long size(String name) throws IOException
+	{
+		Path log = getLogPath(name);
+		return Files.size(getPath(name)) + (Files.exists(log) ? Files.size(log) : 0);
+	}
+
+	Path getPath(String name)
+	{
+		return dir.resolve(name + ".acc");
+	}
+
+	Path getLogPath(String name)
+	{
+		return dir.resolve(name + ".trades");
+	}
+
+	private static void writeMagic(ByteArrayOutputStream out, int magic)
+	{
+		for (int shift = 24; shift >= 0; shift -= 8)
+			out.write(magic >>> shift);
+		out.write(VERSION);
+	}
+
+	private static void checkHeader(ByteBuffer in, int magic, Path path) throws IOException
+	{
+		if(in.remaining() < 5 || in.getInt() != magic)
+			throw new IOException("Not a CryptoBot file: " + path);
+		byte version = in.get();
+		if(version != VERSION)
+			throw new IOException("Unsupported version " + version + " of " + path);
+	}
+
+	private static Crypto getCrypto(String symbol, Path path) throws IOException
+	{
+		Crypto crypto = Crypto.bySymbol(symbol);
+		if(crypto == null)
+			throw new IOException("Unknown coin " + symbol + " in " + path);
+		return crypto;
+	}
+}
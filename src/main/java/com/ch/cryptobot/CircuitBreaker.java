@@ -0,0 +1,94 @@
+package com.ch.cryptobot;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Stops calling something that keeps failing. After enough failures in a row
+// it opens and every call is turned away until the cool down is over, then one
+// trial call goes through: if it works the breaker closes again, if not it
+// opens for another cool down.
+class CircuitBreaker
+{
+	enum State
+	{
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int threshold;
+	private final long coolDown;
+	private State state;
+	private int failures;
+	private long openedAt;
+	private boolean trial;
+
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder trips = new LongAdder();
+
+	CircuitBreaker(int threshold, long coolDown)
+	{
+		if(threshold <= 0)
+			throw new IllegalArgumentException("threshold must be positive: " + threshold);
+
+		this.threshold = threshold;
+		this.coolDown = coolDown;
+		state = State.CLOSED;
+	}
+
+	// Whether a call may go ahead, every allowed call must end in success or failure
+	synchronized boolean allow(long now)
+	{
+		if(state == State.OPEN && now - openedAt >= coolDown)
+		{
+			state = State.HALF_OPEN;
+			trial = false;
+		}
+		if(state == State.CLOSED || state == State.HALF_OPEN && !trial)
+		{
+			if(state == State.HALF_OPEN)
+				trial = true;
+			return true;
+		}
+		rejected.increment();
+		return false;
+	}
+
+	synchronized void success()
+	{
+		state = State.CLOSED;
+		failures = 0;
+		trial = false;
+	}
+
+	synchronized void failure(long now)
+	{
+		failures++;
+		if(state == State.HALF_OPEN || state == State.CLOSED && failures >= threshold)
+		{
+			if(state == State.CLOSED)
+				trips.increment();
+			state = State.OPEN;
+			openedAt = now;
+			trial = false;
+		}
+	}
+
+	synchronized State getState()
+	{
+		return state;
+	}
+
+	long getRejected()
+	{
+		return rejected.sum();
+	}
+
+	long getTrips()
+	{
+		return trips.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CircuitBreaker{" + getState() + ", trips=" + getTrips() + ", rejected=" + getRejected() + "}";
+	}
+}
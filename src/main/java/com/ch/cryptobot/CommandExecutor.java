@@ -0,0 +1,145 @@
+package com.ch.cryptobot;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs commands away from the JDA gateway thread. Uses a virtual thread per
+// command when the JDK has them, otherwise a bounded pool of platform threads.
+class CommandExecutor
+{
+	private final ExecutorService executor;
+	private final boolean virtual;
+
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger maxQueued = new AtomicInteger();
+	private final LongAdder executed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	CommandExecutor(String name, int threads, int capacity)
+	{
+		ExecutorService service = newVirtualThreadExecutor();
+		virtual = service != null;
+
+		if(service == null)
+		{
+			AtomicInteger count = new AtomicInteger();
+			service = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<>(capacity), r -> {
+						Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}, new ThreadPoolExecutor.AbortPolicy());
+		}
+		executor = service;
+	}
+
+	// Returns false if the command couldn't be accepted
+	boolean submit(Runnable command)
+	{
+		long submitted = System.nanoTime();
+		int depth = queued.incrementAndGet();
+		maxQueued.accumulateAndGet(depth, Math::max);
+
+		try
+		{
+			executor.execute(() -> {
+				queued.decrementAndGet();
+				long wait = System.nanoTime() - submitted;
+				waitNanos.add(wait);
+				maxWaitNanos.accumulateAndGet(wait, Math::max);
+
+				try
+				{
+					command.run();
+				}
+				finally
+				{
+					executed.increment();
+				}
+			});
+			return true;
+		}
+		catch (RejectedExecutionException ex)
+		{
+			queued.decrementAndGet();
+			rejected.increment();
+			return false;
+		}
+	}
+
+	void shutdown()
+	{
+		executor.shutdown();
+		try
+		{
+			if(!executor.awaitTermination(10, TimeUnit.SECONDS))
+				System.err.println("Commands still running after 10 seconds, giving up on them");
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	boolean isVirtual()
+	{
+		return virtual;
+	}
+
+	int getQueueDepth()
+	{
+		return queued.get();
+	}
+
+	int getMaxQueueDepth()
+	{
+		return maxQueued.get();
+	}
+
+	long getExecuted()
+	{
+		return executed.sum();
+	}
+
+	long getRejected()
+	{
+		return rejected.sum();
+	}
+
+	double getAverageWaitMillis()
+	{
+		long count = executed.sum();
+		return count == 0 ? 0 : waitNanos.sum() / 1e6 / count;
+	}
+
+	double getMaxWaitMillis()
+	{
+		return maxWaitNanos.get() / 1e6;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CommandExecutor{" + (virtual ? "virtual" : "pooled") + ", queued=" + getQueueDepth() +
+				", maxQueued=" + getMaxQueueDepth() + ", executed=" + getExecuted() + ", rejected=" + getRejected() +
+				", avgWait=" + String.format("%.2f", getAverageWaitMillis()) + "ms, maxWait=" +
+				String.format("%.2f", getMaxWaitMillis()) + "ms}";
+	}
+
+	// Built against Java 11, so virtual threads are looked up reflectively
+	private static ExecutorService newVirtualThreadExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException | RuntimeException ex)
+		{
+			return null;
+		}
+	}
+}
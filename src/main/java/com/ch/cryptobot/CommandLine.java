@@ -0,0 +1,116 @@
+package com.ch.cryptobot;
+
+import java.util.Arrays;
+
+// A message split into words in one pass. Words are only offsets into the
+// message, a String is made for the ones a command actually asks for.
+// Word 0 is the command, args() is the same line without it.
+class CommandLine
+{
+	private final String text;
+	private final int[] bounds;
+	private final int first, count;
+
+	private CommandLine(String text, int[] bounds, int first, int count)
+	{
+		this.text = text;
+		this.bounds = bounds;
+		this.first = first;
+		this.count = count;
+	}
+
+	// Splits text from the given index on at runs of whitespace
+	static CommandLine parse(String text, int from)
+	{
+		int[] bounds = new int[8];
+		int count = 0;
+		int length = text.length();
+		int i = from;
+		while (true)
+		{
+			while (i < length && Character.isWhitespace(text.charAt(i)))
+				i++;
+			if(i == length)
+				break;
+
+			if(count * 2 == bounds.length)
+				bounds = Arrays.copyOf(bounds, bounds.length * 2);
+			bounds[count * 2] = i;
+			while (i < length && !Character.isWhitespace(text.charAt(i)))
+				i++;
+			bounds[count * 2 + 1] = i;
+			count++;
+		}
+		return new CommandLine(text, bounds, 0, count);
+	}
+
+	int size()
+	{
+		return count - first;
+	}
+
+	boolean isEmpty()
+	{
+		return count == first;
+	}
+
+	// The line without its first word
+	CommandLine args()
+	{
+		return new CommandLine(text, bounds, Math.min(first + 1, count), count);
+	}
+
+	String get(int index)
+	{
+		return text.substring(start(index), end(index));
+	}
+
+	// Everything from the given word to the end, spacing as typed
+	String rest(int index)
+	{
+		return text.substring(start(index), end(size() - 1));
+	}
+
+	int start(int index)
+	{
+		return bounds[check(index) * 2];
+	}
+
+	int end(int index)
+	{
+		return bounds[check(index) * 2 + 1];
+	}
+
+	int length(int index)
+	{
+		return end(index) - start(index);
+	}
+
+	char charAt(int index, int offset)
+	{
+		return text.charAt(start(index) + offset);
+	}
+
+	boolean equalsIgnoreCase(int index, String word)
+	{
+		return length(index) == word.length() && text.regionMatches(true, start(index), word, 0, word.length());
+	}
+
+	boolean startsWith(int index, char c)
+	{
+		return charAt(index, 0) == c;
+	}
+
+	private int check(int index)
+	{
+		if(index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("Word " + index + " of " + size());
+		return first + index;
+	}
+
+	@Override
+	public String toString()
+	{
+		return isEmpty() ? "" : rest(0);
+	}
+}
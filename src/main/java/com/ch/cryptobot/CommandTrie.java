@@ -0,0 +1,125 @@
+package com.ch.cryptobot;
+
+// Command names and aliases by letter, matched ignoring case straight from a
+// CommandLine word. A word that isn't a name but starts only one command's
+// names, like "bal" for "balance", finds that command too. Commands put
+// with putExact are only found by their full names, and a word that could
+// start one of them finds nothing, so a typo never runs them by accident.
+class CommandTrie<T>
+{
+	private final Node<T> root = new Node<>();
+
+	// Names are letters only
+	void put(String name, T value)
+	{
+		put(name, value, false);
+	}
+
+	void putExact(String name, T value)
+	{
+		put(name, value, true);
+	}
+
+	private void put(String name, T value, boolean exact)
+	{
+		Node<T> node = root;
+		for (int i = 0; i < name.length(); i++)
+		{
+			int c = index(name.charAt(i));
+			if(c < 0)
+				throw new IllegalArgumentException("Command names are letters only: " + name);
+			if(node.children[c] == null)
+				node.children[c] = new Node<>();
+			node = node.children[c];
+		}
+		if(node.value != null && node.value != value)
+			throw new IllegalArgumentException("Command already registered: " + name);
+		node.value = value;
+		node.exact = exact;
+
+		// Every node on the way now leads to this value too, or to nothing for an exact one
+		node = root;
+		for (int i = 0; i < name.length(); i++)
+		{
+			node = node.children[index(name.charAt(i))];
+			if(exact)
+			{
+				node.unique = null;
+				node.shared = true;
+			}
+			else
+				mark(node, value);
+		}
+	}
+
+	// An alias is exact when the command is
+	void alias(String alias, String name)
+	{
+		Node<T> node = node(name);
+		if(node == null || node.value == null)
+			throw new IllegalArgumentException("No command to alias: " + name);
+		put(alias, node.value, node.exact);
+	}
+
+	T get(String name)
+	{
+		Node<T> node = node(name);
+		return node == null ? null : node.value;
+	}
+
+	private Node<T> node(String name)
+	{
+		Node<T> node = root;
+		for (int i = 0; i < name.length() && node != null; i++)
+		{
+			int c = index(name.charAt(i));
+			node = c < 0 ? null : node.children[c];
+		}
+		return node;
+	}
+
+	// The command named by a word of the line, or the only one it's a prefix of
+	T find(CommandLine line, int word)
+	{
+		Node<T> node = root;
+		int length = line.length(word);
+		for (int i = 0; i < length && node != null; i++)
+		{
+			int c = index(line.charAt(word, i));
+			node = c < 0 ? null : node.children[c];
+		}
+		if(node == null)
+			return null;
+		return node.value != null ? node.value : node.unique;
+	}
+
+	private void mark(Node<T> node, T value)
+	{
+		if(node.shared)
+			return;
+		if(node.unique == null)
+			node.unique = value;
+		else if(node.unique != value)
+		{
+			node.unique = null;
+			node.shared = true;
+		}
+	}
+
+	private static int index(char c)
+	{
+		c |= 0x20;
+		return c >= 'a' && c <= 'z' ? c - 'a' : -1;
+	}
+
+	private static class Node<T>
+	{
+		@SuppressWarnings("unchecked")
+		final Node<T>[] children = new Node[26];
+		T value;
+		boolean exact;
+		// The one command below this node, null once there are several or an exact one
+		T unique;
+		boolean shared;
+	}
+}
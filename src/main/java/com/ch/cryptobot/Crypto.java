@@ -1,8 +1,6 @@
 package com.ch.cryptobot;
 
-import java.util.HashMap;
-import java.util.Map;
-
+// Mapped trade segments store coins by ordinal, new coins go at the end
 @SuppressWarnings("unused")
 enum Crypto
 {
@@ -53,16 +51,9 @@ enum Crypto
 		this.symbol = symbol;
 	}
 
+	// Also takes names, in any case, see CryptoIndex
 	static Crypto bySymbol(String symbol)
 	{
-		return symbolMap.get(symbol);
-	}
-
-	private static final Map<String, Crypto> symbolMap = new HashMap<>();
-
-	static
-	{
-		for (Crypto crypto : values())
-			symbolMap.put(crypto.symbol, crypto);
+		return CryptoIndex.find(symbol);
 	}
 }
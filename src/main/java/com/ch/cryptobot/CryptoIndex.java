@@ -0,0 +1,186 @@
+package com.ch.cryptobot;
+
+import java.util.Locale;
+
+// Every way to name a coin, "BTC", "bitcoin", "SHIBA_INU", "shiba inu",
+// in one open addressing table built once. Keys ignore case, spaces,
+// underscores and hyphens, and are hashed and compared straight from the
+// text, so a lookup never allocates or throws.
+final class CryptoIndex
+{
+	private static final Crypto[] CRYPTOS = Crypto.values();
+	private static final String[] NAMES = new String[CRYPTOS.length];
+	private static final String[] KEYS;
+	private static final Crypto[] VALUES;
+	private static final int MASK;
+
+	static
+	{
+		// Room for a name and a symbol per coin at under half full
+		int size = Integer.highestOneBit(CRYPTOS.length * 4 - 1) << 1;
+		KEYS = new String[size];
+		VALUES = new Crypto[size];
+		MASK = size - 1;
+
+		for (Crypto crypto : CRYPTOS)
+		{
+			NAMES[crypto.ordinal()] = crypto.name().toLowerCase(Locale.ROOT).replace('_', ' ');
+			put(crypto.name(), crypto);
+			put(crypto.symbol, crypto);
+		}
+	}
+
+	private CryptoIndex() {}
+
+	static Crypto find(CharSequence text)
+	{
+		return find(text, 0, text.length());
+	}
+
+	// Null if nothing is called that
+	static Crypto find(CharSequence text, int start, int end)
+	{
+		for (int i = hash(text, start, end) & MASK; KEYS[i] != null; i = (i + 1) & MASK)
+		{
+			if(matches(KEYS[i], text, start, end))
+				return VALUES[i];
+		}
+		return null;
+	}
+
+	// The coin with a name or symbol closest to the text, when it's close enough to be a typo.
+	// Only for when find came up empty, this one does allocate
+	static Crypto suggest(CharSequence text)
+	{
+		int length = 0;
+		for (int i = 0; i < text.length(); i++)
+		{
+			if(fold(text.charAt(i)) != 0)
+				length++;
+		}
+		int limit = Math.max(1, length / 3);
+
+		Crypto best = null;
+		int bestDistance = limit + 1;
+		for (int i = 0; i < KEYS.length; i++)
+		{
+			if(KEYS[i] == null || Math.abs(KEYS[i].length() - length) >= bestDistance)
+				continue;
+
+			int distance = distance(KEYS[i], text);
+			if(distance < bestDistance)
+			{
+				best = VALUES[i];
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+
+	// Lower case with spaces instead of underscores, "shiba inu"
+	static String getName(Crypto crypto)
+	{
+		return NAMES[crypto.ordinal()];
+	}
+
+	private static void put(String name, Crypto crypto)
+	{
+		String key = key(name);
+		int i = hash(key, 0, key.length()) & MASK;
+		for (; KEYS[i] != null; i = (i + 1) & MASK)
+		{
+			if(KEYS[i].equals(key))
+			{
+				if(VALUES[i] != crypto)
+					throw new IllegalStateException(crypto + " and " + VALUES[i] + " are both called " + name);
+				return;
+			}
+		}
+		KEYS[i] = key;
+		VALUES[i] = crypto;
+	}
+
+	private static String key(String name)
+	{
+		StringBuilder sb = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++)
+		{
+			char c = fold(name.charAt(i));
+			if(c != 0)
+				sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	// Lower case ASCII, 0 for characters names don't depend on
+	private static char fold(char c)
+	{
+		if(c >= 'A' && c <= 'Z')
+			return (char) (c + ('a' - 'A'));
+		if(c == ' ' || c == '_' || c == '-')
+			return 0;
+		return c;
+	}
+
+	private static int hash(CharSequence text, int start, int end)
+	{
+		int hash = 0;
+		for (int i = start; i < end; i++)
+		{
+			char c = fold(text.charAt(i));
+			if(c != 0)
+				hash = 31 * hash + c;
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean matches(String key, CharSequence text, int start, int end)
+	{
+		int k = 0;
+		for (int i = start; i < end; i++)
+		{
+			char c = fold(text.charAt(i));
+			if(c == 0)
+				continue;
+			if(k == key.length() || key.charAt(k++) != c)
+				return false;
+		}
+		return k == key.length();
+	}
+
+	// Edit distance between a key and the folded text, counting a swap of two letters as one edit
+	private static int distance(String key, CharSequence text)
+	{
+		int columns = key.length() + 1;
+		int[] before = new int[columns], previous = new int[columns], current = new int[columns];
+		for (int j = 0; j < columns; j++)
+			previous[j] = j;
+
+		char last = 0;
+		int row = 0;
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = fold(text.charAt(i));
+			if(c == 0)
+				continue;
+			row++;
+
+			current[0] = row;
+			for (int j = 1; j < columns; j++)
+			{
+				int cost = key.charAt(j - 1) == c ? 0 : 1;
+				int value = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+				if(row > 1 && j > 1 && key.charAt(j - 1) == last && key.charAt(j - 2) == c)
+					value = Math.min(value, before[j - 2] + 1);
+				current[j] = value;
+			}
+			last = c;
+
+			int[] swap = before;
+			before = previous;
+			previous = current;
+			current = swap;
+		}
+		return previous[columns - 1];
+	}
+}
@@ -1,155 +1,354 @@
 package com.ch.cryptobot;
 
-import net.dv8tion.jda.api.JDA;
-import net.dv8tion.jda.api.entities.Message;
-import net.dv8tion.jda.api.entities.TextChannel;
-
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.*;
 
 public class Engine
 {
-	final JDA jda;
+	final Gateway gateway;
 	final Path accDir;
 	final Accounts accounts;
-	final Map<String, Command> commandMap;
+	final CommandTrie<Route> commands;
 	final ScheduledExecutorService service;
+	final PriceCache prices;
+	final PriceFeed priceFeed;
+	final CommandExecutor executor;
+	final Scheduler scheduler;
+	final Jobs jobs;
+	final TimeZones timeZones;
+	final Stats stats;
+	final Set<Long> admins;
+	final boolean logCommands;
+	// How old a price may be to trade on, and whether older ones make a trade wait or fail
+	final long tradeMaxAge;
+	final boolean queueStaleTrades;
+	final long tradeWait;
+	private boolean stopped;
+
+	public Engine(Gateway gateway, Path path) throws IOException
+	{
+		this(gateway, path, createPriceSource());
+	}
 
-	public Engine(JDA jda, Path path) throws FileNotFoundException
+	// Nothing here needs Discord, the gateway and requests are all it talks to
+	Engine(Gateway gateway, Path path, PriceSource source) throws IOException
 	{
-		this.jda = jda;
+		this.gateway = gateway;
 		accDir = path.toAbsolutePath();
-
-		commandMap = new HashMap<>();
-		commandMap.put("price", this::priceCommand);
-		commandMap.put("coins", this::coinsCommand);
-		commandMap.put("account", this::accountCommand);
-		commandMap.put("accounts", this::accountsCommand);
-		commandMap.put("buy", (msg, args, account) -> buySellCommand(msg, args, account, true));
-		commandMap.put("sell", (msg, args, account) -> buySellCommand(msg, args, account, false));
-		commandMap.put("in", this::inCommand);
-		commandMap.put("every", this::everyCommand);
-		commandMap.put("trades", this::tradesCommand);
-		commandMap.put("balance", this::balanceCommand);
-		commandMap.put("loan", this::loanCommand);
-		commandMap.put("loans", this::loansCommand);
-		commandMap.put("clone", this::cloneCommand);
-		commandMap.put("save", this::saveCommand);
-		commandMap.put("help", this::helpCommand);
+		logCommands = Boolean.parseBoolean(System.getProperty("cryptobot.commands.log", "true"));
+
+		long ttl = Long.getLong("cryptobot.price.ttl", 15000L);
+		CircuitBreaker breaker = new CircuitBreaker(Integer.getInteger("cryptobot.price.breaker.failures", 5), Long.getLong("cryptobot.price.breaker.open", 30000L));
+		prices = new PriceCache(source, ttl, Math.max(ttl, Long.getLong("cryptobot.price.stale", 300000L)), breaker);
+		tradeMaxAge = Long.getLong("cryptobot.trade.age", 60000L);
+		queueStaleTrades = "queue".equalsIgnoreCase(System.getProperty("cryptobot.trade.stale", "reject"));
+		tradeWait = Long.getLong("cryptobot.trade.wait", 10000L);
+		stats = new Stats(prices);
+		admins = parseAdmins(System.getProperty("cryptobot.admins", ""));
+
+		commands = new CommandTrie<>();
+		command("price", this::priceCommand);
+		command("coins", this::coinsCommand);
+		tradeCommand("account", this::accountCommand);
+		command("accounts", this::accountsCommand);
+		tradeCommand("buy", (request, args, account) -> buySellCommand(request, args, account, true));
+		tradeCommand("sell", (request, args, account) -> buySellCommand(request, args, account, false));
+		tradeCommand("in", this::inCommand);
+		tradeCommand("every", this::everyCommand);
+		command("jobs", this::jobsCommand);
+		tradeCommand("cancel", this::cancelCommand);
+		command("trades", this::tradesCommand);
+		command("balance", this::balanceCommand);
+		tradeCommand("loan", this::loanCommand);
+		command("loans", this::loansCommand);
+		command("clone", this::cloneCommand);
+		command("save", this::saveCommand);
+		command("timezone", this::timezoneCommand);
+		command("stats", this::statsCommand);
+		command("help", this::helpCommand);
+		commands.alias("portfolio", "balance");
+		commands.alias("history", "trades");
+		commands.alias("schedule", "jobs");
 
 		if(!Files.exists(accDir))
 			throw new FileNotFoundException("Accounts directory doesn't exist: " + accDir);
 
 		service = Executors.newSingleThreadScheduledExecutor();
+		executor = new CommandExecutor("command", Integer.getInteger("cryptobot.commands.threads", 16), Integer.getInteger("cryptobot.commands.queue", 1000));
+
+		long feedPeriod = Long.getLong("cryptobot.price.feed", 0L);
+		priceFeed = feedPeriod > 0 ? new PriceFeed(prices.source, prices, feedPeriod) : null;
+		if(priceFeed != null)
+			priceFeed.start();
 
 		accounts = new Accounts(this, accDir);
+		String zone = System.getProperty("cryptobot.timezone");
+		timeZones = new TimeZones(accDir.resolve("timezones.json"), zone == null ? ZoneId.systemDefault() : ZoneId.of(zone));
+		service.scheduleWithFixedDelay(accounts::flush, 30, 30, TimeUnit.SECONDS);
+		scheduler = new Scheduler(new CommandExecutor("job", Integer.getInteger("cryptobot.jobs.threads", 8), Integer.getInteger("cryptobot.jobs.queue", 100_000)), prices);
+		jobs = new Jobs(this, accDir.resolve("jobs.log"), !"skip".equalsIgnoreCase(System.getProperty("cryptobot.jobs.missed")));
+
+		scheduler.start();
+		stats.register();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+	}
+
+	// Splits a message into words from the given index on, whoever delivered it.
+	// Timed as the parse stage
+	CommandLine parse(String text, int from)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			return CommandLine.parse(text, from);
+		}
+		finally
+		{
+			stats.record(Stats.Stage.PARSE, start);
+		}
+	}
+
+	// False if it was turned away because too many commands are waiting
+	boolean submit(Request request, CommandLine line)
+	{
+		if(executor.submit(() -> run(request, line)))
+			return true;
 
-		Runtime.getRuntime().addShutdownHook(new Thread(this::save));
+		reply(request, "_Too busy right now, try again in a moment..._");
+		return false;
 	}
 
-	void run(Message msg, String cmd, String[] args, String channel)
+	// Line is the message without the leading '!', it has at least the command word
+	void run(Request request, CommandLine line)
 	{
-		System.out.println("CALLED: '" + cmd + "' " + Arrays.toString(args) + " in " + channel);
+		String channel = request.getChannel();
+		if(logCommands)
+			System.out.println("CALLED: '" + line + "' in " + channel);
 		channel = channel.equalsIgnoreCase("main") ? null : channel;
 
+		Route route = commands.find(line, 0);
+		long start = System.nanoTime();
 		try
 		{
-			Command command = commandMap.get(cmd.toLowerCase(Locale.ROOT));
-
-			if (command == null)
-				msg.reply("_No such command..._ `" + cmd + "`\ntry `!help`").complete();
+			if (route == null)
+				reply(request, "_No such command..._ `" + line.get(0) + "`\ntry `!help`");
 			else
-				command.run(msg, args, channel);
+				route.command.run(request, line.args(), channel);
 		}
 		catch (Exception e)
 		{
-			System.err.println("Issue with command: " + cmd);
+			stats.error();
+			System.err.println("Issue with command: " + line);
 			e.printStackTrace();
 		}
+		finally
+		{
+			if(route != null)
+				route.latency.recordSince(start);
+			request.done();
+		}
+	}
+
+	// Replies are timed until they're delivered
+	private void reply(Request request, CharSequence text)
+	{
+		long start = System.nanoTime();
+		request.reply(text).whenComplete((sent, ex) -> delivered(start, ex));
+	}
+
+	private void send(Request request, CharSequence text)
+	{
+		long start = System.nanoTime();
+		request.send(text).whenComplete((sent, ex) -> delivered(start, ex));
 	}
 
-	private void priceCommand(Message msg, String[] args, String accountName)
+	private void delivered(long start, Throwable ex)
 	{
-		if (args.length == 0)
+		if(ex == null)
 		{
-			msg.reply("_Use it like_ `!price <crypto>` _ex._ `!price BTC` _or_ `!price dogecoin`").complete();
+			stats.record(Stats.Stage.REPLY, start);
 			return;
 		}
-		String coin = Util.joinLast(args, 0);
-		Crypto crypto = Util.getCrypto(coin);
+		stats.error();
+		System.err.println("Couldn't deliver a reply: " + ex);
+	}
+
+	private void command(String name, Command command)
+	{
+		commands.put(name, new Route(command, stats.command(name)));
+	}
+
+	// Commands that change balances, jobs or accounts only run by their full name, never a prefix
+	private void tradeCommand(String name, Command command)
+	{
+		commands.putExact(name, new Route(command, stats.command(name)));
+	}
+
+	// Cached or fetched, a price lookup is timed as its own stage
+	private Quote getQuote(Crypto crypto)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			return prices.getQuote(crypto);
+		}
+		finally
+		{
+			stats.record(Stats.Stage.PRICE, start);
+		}
+	}
+
+	private Map<Crypto, Quote> getQuotes(Collection<Crypto> cryptos)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			return prices.getQuotes(cryptos);
+		}
+		finally
+		{
+			stats.record(Stats.Stage.PRICE, start);
+		}
+	}
+
+	// A quote young enough to trade on, or null after saying why there is none in sb.
+	// Older ones are refused, or with cryptobot.trade.stale=queue the trade waits
+	// up to cryptobot.trade.wait for a fresh one
+	private Quote getTradeQuote(Crypto crypto, Quote quote, StringBuilder sb)
+	{
+		long age = quote.getAge(System.currentTimeMillis());
+		if(age <= tradeMaxAge)
+			return quote;
+
+		if(!queueStaleTrades)
+		{
+			appendRefused(sb, crypto, age);
+			return null;
+		}
+
+		long start = System.nanoTime();
+		try
+		{
+			return prices.refresh(crypto).get(tradeWait, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException | TimeoutException ex)
+		{
+			System.err.println("No fresh price of " + crypto.symbol + " for a queued trade: " + ex);
+		}
+		finally
+		{
+			stats.record(Stats.Stage.PRICE, start);
+		}
+		appendDropped(sb, crypto, age);
+		return null;
+	}
+
+	private static void appendRefused(StringBuilder sb, Crypto crypto, long age)
+	{
+		sb.append("_The last price of ").append(crypto.symbol).append(" is ");
+		Formats.appendAge(sb, age).append(" old, try again in a bit_");
+	}
+
+	private static void appendDropped(StringBuilder sb, Crypto crypto, long age)
+	{
+		sb.append("_Trade dropped, no fresh price of ").append(crypto.symbol).append(" came in. The last one is ");
+		Formats.appendAge(sb, age).append(" old_");
+	}
+
+	// Marks prices older than the cache keeps them fresh
+	private StringBuilder appendAge(StringBuilder sb, long timestamp)
+	{
+		long age = System.currentTimeMillis() - timestamp;
+		if(age >= prices.getTtl())
+			Formats.appendAge(sb.append(" _as of "), age).append(" ago_");
+		return sb;
+	}
+
+	private void priceCommand(Request request, CommandLine args, String accountName)
+	{
+		if (args.isEmpty())
+		{
+			reply(request, "_Use it like_ `!price <crypto>` _ex._ `!price BTC` _or_ `!price dogecoin`");
+			return;
+		}
+		String coin = args.rest(0);
+		Crypto crypto = CryptoIndex.find(coin);
 
 		if (crypto == null)
 		{
-			msg.reply("_No such crypto..._ `" + coin + "`. _It might not be registered in the bot._").complete();
+			reply(request, noSuchCrypto(coin));
 			return;
 		}
 
-		msg.reply("**" + crypto.symbol + "**: `" + Util.cashFmt(Util.getCryptoPrice(crypto)) + "`").complete();
+		Quote quote = getQuote(crypto);
+		StringBuilder sb = new StringBuilder();
+		sb.append("**").append(crypto.symbol).append("**: `");
+		Formats.appendCash(sb, quote.price).append("`");
+		reply(request, appendAge(sb, quote.timestamp));
 	}
 
-	private void coinsCommand(Message msg, String[] args, String accountName)
+	private void coinsCommand(Request request, CommandLine args, String accountName)
 	{
 		StringBuilder sb = new StringBuilder();
 		sb.append("_Current Coins:_\n```\n");
 
-		String name;
 		for (Crypto crypto : Crypto.values())
-		{
-			name = crypto.toString().toLowerCase(Locale.ROOT).replace("_", " ");
-			sb.append(name).append(": ").append(crypto.symbol).append('\n');
-		}
+			sb.append(CryptoIndex.getName(crypto)).append(": ").append(crypto.symbol).append('\n');
 		sb.setLength(sb.length() - 1);
 
 		sb.append("```");
-		msg.reply(sb).complete();
+		reply(request, sb);
 	}
 
-	private void accountsCommand(Message msg, String[] args, String accountName)
+	private void accountsCommand(Request request, CommandLine args, String accountName)
 	{
-		long id = msg.getAuthor().getIdLong();
+		long id = request.getUserId();
 
 		StringBuilder sb = new StringBuilder();
 		int amt = 0;
-		for (String account : accounts.getAccounts())
+		for (AccountRegistry.Entry account : accounts.getOwnedAccounts(id))
 		{
-			if(accounts.getOwner(account) == id)
-			{
-				sb.append("<#").append(accounts.getChannel(account)).append(">\n");
-				amt++;
-			}
+			sb.append("<#").append(account.channel).append(">\n");
+			amt++;
 		}
 		if(sb.length() > 0)
 			sb.setLength(sb.length() - 1);
 
 		if(amt == 0)
-			msg.reply("_You don't have any accounts! Try:_ `!account <name>`").complete();
+			reply(request, "_You don't have any accounts! Try:_ `!account <name>`");
 		else
-			msg.reply(sb).complete();
+			reply(request, sb);
 	}
 
-	private void accountCommand(Message msg, String[] args, String accountName)
+	private void accountCommand(Request request, CommandLine args, String accountName)
 	{
-		if (args.length == 0)
+		if (args.isEmpty())
 		{
-			msg.reply("_Use it like_ `!account <name>` _ex._ `!account Chris` _or_ `!account Tig-Ol-Bitties`").complete();
+			reply(request, "_Use it like_ `!account <name>` _ex._ `!account Chris` _or_ `!account Tig-Ol-Bitties`");
 			return;
 		}
 		if (accountName != null)
 		{
-			msg.reply(mainUsage()).complete();
+			reply(request, mainUsage());
 			return;
 		}
 
-		String name = Util.joinLast(args, 0);
-		long authorID = msg.getAuthor().getIdLong();
+		String name = args.rest(0);
+		long authorID = request.getUserId();
 
 		if (accounts.hasAccount(name))
 		{
@@ -157,84 +356,89 @@ public class Engine
 			if(id == authorID)
 			{
 				long accChannelID = accounts.getChannel(name);
-				TextChannel ch = jda.getTextChannelById(accChannelID);
-				Objects.requireNonNull(ch).sendMessage("<@" + id + ">").complete();
+				gateway.send(accChannelID, "<@" + id + ">");
 			}
 			else
-				msg.reply("_It seems this account is already owned by_ <@" + id + ">_!_").complete();
+				reply(request, "_It seems this account is already owned by_ <@" + id + ">_!_");
 
 			return;
 		}
 		String invalidMessage = accounts.getInvalidMessage(name);
 		if (invalidMessage != null)
 		{
-			msg.reply(invalidMessage).complete();
+			reply(request, invalidMessage);
 			return;
 		}
 
 		long channelID = accounts.createAccount(name, authorID, null);
-		msg.reply("**ACCOUNT AND CHANNEL CREATED!** <#" + channelID + ">").complete();
+		if(channelID == -1)
+		{
+			reply(request, "_Someone else just took that name!_");
+			return;
+		}
+		reply(request, "**ACCOUNT AND CHANNEL CREATED!** <#" + channelID + ">");
 	}
 
-	private void buySellCommand(Message msg, String[] args, String accountName, boolean buy)
+	private void buySellCommand(Request request, CommandLine args, String accountName, boolean buy)
 	{
 		if(accountName == null)
 		{
-			msg.reply(notMainUsage()).complete();
+			reply(request, notMainUsage());
 			return;
 		}
-		if(accounts.getOwner(accountName) != msg.getAuthor().getIdLong())
+		if(accounts.getOwner(accountName) != request.getUserId())
 		{
-			msg.reply(notYourAccount()).complete();
+			reply(request, notYourAccount());
 			return;
 		}
 
 		String str = buy ? "buy" : "sell";
-		if(args.length != 2)
+		if(args.size() != 2)
 		{
-			msg.reply("_Use it like_ `!" + str + " <amount> <crypto>` _ex._ `!" + str + " 10000 DOGE` _or_ `!" + str + " 0.27297441 ethereum`").complete();
+			reply(request, "_Use it like_ `!" + str + " <amount> <crypto>` _ex._ `!" + str + " 10000 DOGE` _or_ `!" + str + " 0.27297441 ethereum`");
 			return;
 		}
 
-		BigDecimal amount;
-		try
+		long amount = parseAmount(args.get(0));
+		if(amount <= 0)
 		{
-			amount = new BigDecimal(args[0]);
-
-			if(amount.signum() <= 0)
-				throw new NumberFormatException();
-		}
-		catch (NumberFormatException ex)
-		{
-			msg.reply(decimalNumber()).complete();
+			reply(request, badAmount(args.get(0)));
 			return;
 		}
 
-		String coin = Util.joinLast(args, 1);
-		Crypto crypto = Util.getCrypto(coin);
+		String coin = args.rest(1);
+		Crypto crypto = CryptoIndex.find(coin);
 		if(crypto == null)
 		{
-			msg.reply("_No such crypto..._ `" + coin + "`. _It might not be registered in the bot._").complete();
+			reply(request, noSuchCrypto(coin));
 			return;
 		}
 
+		StringBuilder sb = new StringBuilder();
+		Quote quote = getTradeQuote(crypto, getQuote(crypto), sb);
+		if(quote != null)
+			accounts.withAccount(accountName, account -> trade(account, crypto, amount, quote.price, buy, false, sb));
+		reply(request, sb);
+	}
+
+	// Buys or sells at the given unit price and describes the outcome in sb,
+	// returns whether the account changed
+	static boolean trade(Account account, Crypto crypto, long amount, double unitPrice, boolean buy, boolean auto, StringBuilder sb)
+	{
 		boolean dirty;
-		Account account = accounts.load(accountName);
-		BigDecimal unitPrice = BigDecimal.valueOf(Util.getCryptoPrice(crypto));
-		BigDecimal price = unitPrice.multiply(amount).setScale(2, buy ? RoundingMode.UP : RoundingMode.DOWN);
-		BigDecimal money = account.getMoney();
-		BigDecimal balance = account.getBalance(crypto);
-		BigDecimal newMoney = null, newBalance = null;
+		long price = Money.cost(unitPrice, amount, buy);
+		long money = account.getMoney();
+		long balance = account.getBalance(crypto);
+		long newMoney = 0, newBalance = 0;
 
-		StringBuilder sb = new StringBuilder();
 		if(buy)
 		{
-			dirty = money.subtract(price).signum() >= 0;
+			dirty = money - price >= 0;
 
 			if(dirty)
 			{
-				newMoney = money.subtract(price);
-				newBalance = balance.add(amount);
+				newMoney = money - price;
+				newBalance = Math.addExact(balance, amount);
 
 				account.setMoney(newMoney);
 				account.setBalance(crypto, newBalance);
@@ -242,20 +446,20 @@ public class Engine
 			else
 			{
 				sb.append("_You can't afford this! You need_ `");
-				sb.append(Util.cashFmt(price.doubleValue()));
+				Formats.appendCash(sb, price);
 				sb.append("` _and you have_ `");
-				sb.append(Util.cashFmt(money.doubleValue()));
+				Formats.appendCash(sb, money);
 				sb.append("`");
 			}
 		}
 		else
 		{
-			dirty = balance.subtract(amount).signum() >= 0;
+			dirty = balance - amount >= 0;
 
 			if(dirty)
 			{
-				newMoney = money.add(price);
-				newBalance = balance.subtract(amount);
+				newMoney = Math.addExact(money, price);
+				newBalance = balance - amount;
 
 				account.setMoney(newMoney);
 				account.setBalance(crypto, newBalance);
@@ -263,11 +467,11 @@ public class Engine
 			else
 			{
 				sb.append("_You can't afford this! You need_ `");
-				sb.append(amount.toPlainString());
+				Quantity.appendTo(sb, amount);
 				sb.append("` _");
 				sb.append(crypto.symbol);
 				sb.append(" and you have_ `");
-				sb.append(balance.toPlainString());
+				Quantity.appendTo(sb, balance);
 				sb.append("`");
 			}
 		}
@@ -279,264 +483,380 @@ public class Engine
 			else
 				sb.append("_Selling_ `");
 
-			sb.append(amount.toPlainString());
+			Quantity.appendTo(sb, amount);
 			sb.append("` _");
 			sb.append(crypto.symbol);
 			sb.append(" for_ `");
-			sb.append(Util.cashFmt(price.doubleValue()));
+			Formats.appendCash(sb, price);
 			sb.append("`\n");
 
 			sb.append("**Money:** `");
-			sb.append(Util.cashFmt(money.doubleValue()));
+			Formats.appendCash(sb, money);
 			sb.append("` -> `");
-			sb.append(Util.cashFmt(newMoney.doubleValue()));
+			Formats.appendCash(sb, newMoney);
 			sb.append("`");
 
-			account.addTransaction(new Transaction(money, newMoney, price, balance, newBalance, amount, unitPrice, crypto, buy, false));
-
-			account.save();
+			account.addTransaction(new Transaction(money, newMoney, price, balance, newBalance, amount, unitPrice, crypto, buy, auto));
+			account.markDirty();
 		}
-		msg.reply(sb).complete();
+
+		return dirty;
 	}
 
-	private void inCommand(Message msg, String[] args, String accountName)
+	private void inCommand(Request request, CommandLine args, String accountName)
 	{
 		if(accountName == null)
 		{
-			msg.reply(notMainUsage()).complete();
+			reply(request, notMainUsage());
 			return;
 		}
-		if(accounts.getOwner(accountName) != msg.getAuthor().getIdLong())
+		if(accounts.getOwner(accountName) != request.getUserId())
 		{
-			msg.reply(notYourAccount()).complete();
+			reply(request, notYourAccount());
 			return;
 		}
 
-		if(args.length != 4)
+		if(args.size() != 4)
 		{
-			msg.reply("_Use it like_ `!in <time> <buy/sell> <amount> <crypto>` _ex._ `!in 20m sell 10000 DOGE` _or_ `!in 3h buy 0.27297441 ethereum`").complete();
+			reply(request, "_Use it like_ `!in <time> <buy/sell> <amount> <crypto>` _ex._ `!in 20m sell 10000 DOGE` _or_ `!in 3h buy 0.27297441 ethereum`");
 			return;
 		}
 
 		long minutes;
 		try
 		{
-			minutes = getMinutes(args[0]);
+			minutes = getMinutes(args.get(0));
 		}
 		catch (NumberFormatException ex)
 		{
-			msg.reply("_Expected a time to perform transaction, see 'time' in_ `!help`").complete();
+			reply(request, "_Expected a time to perform transaction, see 'time' in_ `!help`");
 			return;
 		}
 
 		boolean buy;
-		if(args[1].equalsIgnoreCase("buy"))
+		if(args.equalsIgnoreCase(1, "buy"))
 			buy = true;
-		else if(args[1].equalsIgnoreCase("sell"))
+		else if(args.equalsIgnoreCase(1, "sell"))
 			buy = false;
 		else
 		{
-			msg.reply("_Expected_ `buy` _or_ `sell` _after_ `in`").complete();
+			reply(request, "_Expected_ `buy` _or_ `sell` _after_ `in`");
 			return;
 		}
 
 
-		BigDecimal amount;
-		try
-		{
-			amount = new BigDecimal(args[2]);
-
-			if(amount.signum() <= 0)
-				throw new NumberFormatException();
-		}
-		catch (NumberFormatException ex)
+		long amount = parseAmount(args.get(2));
+		if(amount <= 0)
 		{
-			msg.reply(decimalNumber()).complete();
+			reply(request, badAmount(args.get(2)));
 			return;
 		}
 
-		String coin = Util.joinLast(args, 3);
-		Crypto crypto = Util.getCrypto(coin);
+		String coin = args.rest(3);
+		Crypto crypto = CryptoIndex.find(coin);
 		if(crypto == null)
 		{
-			msg.reply("_No such crypto..._ `" + coin + "`. _It might not be registered in the bot._").complete();
+			reply(request, noSuchCrypto(coin));
 			return;
 		}
+		ScheduledTransaction job = new ScheduledTransaction(jobs.nextId(), accountName, crypto, amount, buy, request.getId(), 0, System.currentTimeMillis() + minutes * 60_000L);
+		jobs.add(job);
+
 		StringBuilder sb = new StringBuilder();
 		sb.append("_Scheduled to_ **");
 		sb.append(buy ? "BUY" : "SELL");
 		sb.append(" `");
-		sb.append(amount.toPlainString());
+		Quantity.appendTo(sb, amount);
 		sb.append(" ");
 		sb.append(crypto.symbol);
 		sb.append("`** _in_ `");
-		sb.append(args[0]);
+		sb.append(args.get(0));
+		sb.append("` `#");
+		sb.append(job.id);
 		sb.append("`");
-		long msgID = msg.getIdLong();
-		msg.reply(sb).complete();
-
-		service.schedule(new ScheduledTransaction(accountName, crypto, amount, buy, msgID), minutes, TimeUnit.MINUTES);
+		reply(request, sb);
 	}
 
-	private void everyCommand(Message msg, String[] args, String accountName)
+	private void everyCommand(Request request, CommandLine args, String accountName)
 	{
 		if(accountName == null)
 		{
-			msg.reply(notMainUsage()).complete();
+			reply(request, notMainUsage());
 			return;
 		}
-		if(accounts.getOwner(accountName) != msg.getAuthor().getIdLong())
+		if(accounts.getOwner(accountName) != request.getUserId())
 		{
-			msg.reply(notYourAccount()).complete();
+			reply(request, notYourAccount());
 			return;
 		}
 
-		if(args.length != 4)
+		if(args.size() != 4)
 		{
-			msg.reply("_Use it like_ `!every <time> <buy/sell> <amount> <crypto>` _ex._ `!every 20m sell 10000 DOGE` _or_ `!every 3h buy 0.27297441 ethereum`").complete();
+			reply(request, "_Use it like_ `!every <time> <buy/sell> <amount> <crypto>` _ex._ `!every 20m sell 10000 DOGE` _or_ `!every 3h buy 0.27297441 ethereum`");
 			return;
 		}
 
 		long minutes;
 		try
 		{
-			minutes = getMinutes(args[0]);
+			minutes = getMinutes(args.get(0));
 		}
 		catch (NumberFormatException ex)
 		{
-			msg.reply("_Expected a time to perform transaction, see 'time' in_ `!help`").complete();
+			reply(request, "_Expected a time to perform transaction, see 'time' in_ `!help`");
+			return;
+		}
+		if(minutes <= 0)
+		{
+			reply(request, "_Expected a time of at least a minute, see 'time' in_ `!help`");
 			return;
 		}
 
 		boolean buy;
-		if(args[1].equalsIgnoreCase("buy"))
+		if(args.equalsIgnoreCase(1, "buy"))
 			buy = true;
-		else if(args[1].equalsIgnoreCase("sell"))
+		else if(args.equalsIgnoreCase(1, "sell"))
 			buy = false;
 		else
 		{
-			msg.reply("_Expected_ `buy` _or_ `sell` _after_ `in`").complete();
+			reply(request, "_Expected_ `buy` _or_ `sell` _after_ `in`");
 			return;
 		}
 
 
-		BigDecimal amount;
-		try
-		{
-			amount = new BigDecimal(args[2]);
-
-			if(amount.signum() <= 0)
-				throw new NumberFormatException();
-		}
-		catch (NumberFormatException ex)
+		long amount = parseAmount(args.get(2));
+		if(amount <= 0)
 		{
-			msg.reply(decimalNumber()).complete();
+			reply(request, badAmount(args.get(2)));
 			return;
 		}
 
-		String coin = Util.joinLast(args, 3);
-		Crypto crypto = Util.getCrypto(coin);
+		String coin = args.rest(3);
+		Crypto crypto = CryptoIndex.find(coin);
 		if(crypto == null)
 		{
-			msg.reply("_No such crypto..._ `" + coin + "`. _It might not be registered in the bot._").complete();
+			reply(request, noSuchCrypto(coin));
 			return;
 		}
+		ScheduledTransaction job = new ScheduledTransaction(jobs.nextId(), accountName, crypto, amount, buy, request.getId(), minutes, System.currentTimeMillis() + minutes * 60_000L);
+		jobs.add(job);
+
 		StringBuilder sb = new StringBuilder();
 		sb.append("_Scheduled to_ **");
 		sb.append(buy ? "BUY" : "SELL");
 		sb.append(" `");
-		sb.append(amount.toPlainString());
+		Quantity.appendTo(sb, amount);
 		sb.append(" ");
 		sb.append(crypto.symbol);
 		sb.append("`** _every_ `");
-		sb.append(args[0]);
+		sb.append(args.get(0));
+		sb.append("` `#");
+		sb.append(job.id);
 		sb.append("`");
-		long msgID = msg.getIdLong();
-		msg.reply(sb).complete();
+		reply(request, sb);
+	}
+
+	private void jobsCommand(Request request, CommandLine args, String accountName)
+	{
+		if(accountName == null)
+		{
+			reply(request, notMainUsage());
+			return;
+		}
+
+		List<ScheduledTransaction> list = jobs.getJobs(accountName);
+		if(list.isEmpty())
+		{
+			reply(request, "_Nothing scheduled for this account! Try_ `!every 1h buy 1 DOGE`");
+			return;
+		}
+
+		ZoneId zone = timeZones.get(request.getUserId());
+		StringBuilder sb = new StringBuilder();
+		sb.append("**Scheduled Transactions:**\n");
+		for (ScheduledTransaction job : list)
+		{
+			sb.append("`#").append(job.id).append("` ");
+			sb.append(job.buy ? "BUY" : "SELL");
+			sb.append(" `").append(Quantity.toPlainString(job.amount)).append(' ').append(job.crypto.symbol).append('`');
+			if(job.isRepeating())
+				sb.append(" _every_ `").append(job.period).append("m`");
+			sb.append(" _next_ `");
+			Formats.appendTime(sb, job.nextFire, zone).append("`\n");
+		}
+		sb.setLength(sb.length() - 1);
+
+		reply(request, sb);
+	}
+
+	private void cancelCommand(Request request, CommandLine args, String accountName)
+	{
+		if(accountName == null)
+		{
+			reply(request, notMainUsage());
+			return;
+		}
+		if(accounts.getOwner(accountName) != request.getUserId())
+		{
+			reply(request, notYourAccount());
+			return;
+		}
+		if(args.size() != 1)
+		{
+			reply(request, "_Use it like_ `!cancel <id>` _ex._ `!cancel 12` _or_ `!cancel #12`, _see_ `!jobs`");
+			return;
+		}
+
+		long id;
+		try
+		{
+			String text = args.get(0);
+			id = Long.parseLong(args.startsWith(0, '#') ? text.substring(1) : text);
+		}
+		catch (NumberFormatException ex)
+		{
+			reply(request, "_Expected the id of a scheduled transaction, see_ `!jobs`");
+			return;
+		}
 
-		service.scheduleAtFixedRate(new ScheduledTransaction(accountName, crypto, amount, buy, msgID), minutes, minutes, TimeUnit.MINUTES);
+		ScheduledTransaction job = jobs.get(id);
+		if(job == null || !job.accountName.equals(accountName) || !jobs.cancel(id))
+			reply(request, "_No such scheduled transaction..._ `#" + id + "`");
+		else
+			reply(request, "_Cancelled_ `#" + id + "`");
 	}
 
-	private void tradesCommand(Message msg, String[] args, String accountName)
+	private void tradesCommand(Request request, CommandLine args, String accountName)
 	{
 		if(accountName == null)
 		{
-			msg.reply(notMainUsage()).complete();
+			reply(request, notMainUsage());
+			return;
+		}
+
+		if(args.size() > 1)
+		{
+			reply(request, "_Use it like_ `!trades [page]` _ex._ `!trades` _or_ `!trades 2`");
+			return;
+		}
+
+		int page;
+		try
+		{
+			page = args.isEmpty() ? 1 : Integer.parseInt(args.get(0));
+			if(page <= 0)
+				throw new NumberFormatException();
+		}
+		catch (NumberFormatException ex)
+		{
+			reply(request, "_Expected a page number! ex._ `1`, `2`");
 			return;
 		}
 
-		Account account = accounts.load(accountName);
+		ZoneId zone = timeZones.get(request.getUserId());
+		String trades = accounts.fromAccount(accountName, account -> renderTrades(account, page, zone));
+		List<String> parts = Util.split(trades, MESSAGE_LIMIT);
+		reply(request, parts.get(0));
+		for (int i = 1; i < parts.size(); i++)
+			send(request, parts.get(i));
+	}
+
+	// Renders one page of trades, newest first, touching only the trades on that page
+	private String renderTrades(Account account, int page, ZoneId zone)
+	{
+		TransactionHistory history = account.getTransactions();
+		if(history.isEmpty())
+			return "_No trades yet! Try_ `!buy 1 DOGE`";
+
+		int pages = (history.size() + TRADES_PER_PAGE - 1) / TRADES_PER_PAGE;
+		if(page > pages)
+			return "_There " + (pages == 1 ? "is only 1 page" : "are only " + pages + " pages") + " of trades!_";
+
+		int from = history.size() - (page - 1) * TRADES_PER_PAGE;
+		int to = Math.max(0, from - TRADES_PER_PAGE);
 
 		StringBuilder sb = new StringBuilder();
-		sb.append("**All Transactions:**\n");
-		for (Transaction transaction : account.getTransactions())
+		sb.append("**Transactions:** _page ").append(page).append(" of ").append(pages).append(", newest first_\n");
+		TransactionHistory.Cursor transaction = history.cursor(from);
+		while (transaction.previous() && transaction.index() >= to)
 		{
 			sb.append('`');
-			sb.append(dateFormat.format(transaction.timestamp));
+			Formats.appendTime(sb, transaction.timestamp(), zone);
 			sb.append("` ");
 
-			if(transaction.buy)
+			if(transaction.isBuy())
 				sb.append("Bought ");
 			else
 				sb.append("Sold ");
 
 			sb.append('`');
-			sb.append(transaction.amount.toPlainString());
+			Quantity.appendTo(sb, transaction.amount());
 			sb.append("` _");
-			sb.append(transaction.crypto.symbol);
+			sb.append(transaction.crypto().symbol);
 			sb.append(" for_ `");
-			sb.append(Util.cashFmt(transaction.unitPrice.doubleValue()));
+			Formats.appendCash(sb, transaction.unitPrice());
 			sb.append("` _ea. total_ `");
-			sb.append(Util.cashFmt(transaction.price.doubleValue()));
+			Formats.appendCash(sb, transaction.price());
 			sb.append("` Money: `");
-			sb.append(Util.cashFmt(transaction.prevMoney.doubleValue()));
+			Formats.appendCash(sb, transaction.prevMoney());
 			sb.append("` to `");
-			sb.append(Util.cashFmt(transaction.newMoney.doubleValue()));
+			Formats.appendCash(sb, transaction.newMoney());
 			sb.append("`");
 
-			if(transaction.auto)
+			if(transaction.isAuto())
 				sb.append(" `AUTO`");
 
 			sb.append("\n");
 		}
 		sb.setLength(sb.length() - 1);
 
-		msg.reply(sb).complete();
+		return sb.toString();
 	}
 
-	private void balanceCommand(Message msg, String[] args, String accountName)
+	private void balanceCommand(Request request, CommandLine args, String accountName)
 	{
 		if(accountName == null)
 		{
-			msg.reply(notMainUsage()).complete();
+			reply(request, notMainUsage());
 			return;
 		}
 
-		Account account = accounts.load(accountName);
+		// Copy what we need so prices are fetched without holding the account
+		Map<Crypto, BigDecimal> balances = new EnumMap<>(Crypto.class);
+		long money = accounts.fromAccount(accountName, account -> {
+			for (Crypto crypto : account.getHeldCryptos())
+				balances.put(crypto, Quantity.toBigDecimal(account.getBalance(crypto)));
+			return account.getMoney();
+		});
 		StringBuilder sb = new StringBuilder();
 
-		sb.append("**Account Money:** `").append(Util.cashFmt(account.getMoney().doubleValue())).append("`");
+		sb.append("**Account Money:** `");
+		Formats.appendCash(sb, money).append("`");
 
-		if(account.hasBalances())
+		if(!balances.isEmpty())
 		{
-			BigDecimal total = account.getMoney(), totalCrypto = BigDecimal.ZERO;
+			BigDecimal total = Money.toBigDecimal(money), totalCrypto = BigDecimal.ZERO;
 			sb.append("\n**Crypto Balances:**\n");
 
+			Map<Crypto, Quote> held = getQuotes(balances.keySet());
+			long oldest = Long.MAX_VALUE;
 			BigDecimal bal;
 			for (Crypto crypto : Crypto.values())
 			{
-				bal = account.getBalance(crypto);
+				bal = balances.getOrDefault(crypto, BigDecimal.ZERO);
 				if(bal.signum() != 0)
 				{
-					BigDecimal cashAmt = BigDecimal.valueOf(Util.getCryptoPrice(crypto));
-					String first = Util.cashFmt(cashAmt.doubleValue());
+					Quote quote = held.get(crypto);
+					oldest = Math.min(oldest, quote.timestamp);
+					BigDecimal cashAmt = BigDecimal.valueOf(quote.price);
+					String first = Formats.cash(cashAmt);
 					cashAmt = cashAmt.multiply(bal);
 					sb.append("_");
 					sb.append(crypto.symbol);
 					sb.append("_: `");
-					sb.append(bal.toPlainString());
+					sb.append(bal.stripTrailingZeros().toPlainString());
 					sb.append(" / 1` _USD:_ `");
-					sb.append(Util.cashFmt(cashAmt.doubleValue()));
+					Formats.appendCash(sb, cashAmt);
 					sb.append(" / ");
 					sb.append(first);
 					sb.append("`\n");
@@ -546,117 +866,186 @@ public class Engine
 			}
 
 			if(total.equals(totalCrypto))
-				sb.append("**Total Cash Amount:** `").append(Util.cashFmt(total.doubleValue())).append("`");
+				sb.append("**Total Cash Amount:** `").append(Formats.cash(total)).append("`");
 			else
-				sb.append("**Total Cash Amount:** `").append(Util.cashFmt(total.doubleValue())).append("` _without money:_ `").append(Util.cashFmt(totalCrypto.doubleValue())).append("`");
+				sb.append("**Total Cash Amount:** `").append(Formats.cash(total)).append("` _without money:_ `").append(Formats.cash(totalCrypto)).append("`");
+			appendAge(sb, oldest);
 		}
 
-		msg.reply(sb).complete();
+		reply(request, sb);
 	}
 
-	private void loanCommand(Message msg, String[] args, String accountName)
+	private void loanCommand(Request request, CommandLine args, String accountName)
 	{
 		if(accountName == null)
 		{
-			msg.reply(notMainUsage()).complete();
+			reply(request, notMainUsage());
 			return;
 		}
-		if(accounts.getOwner(accountName) != msg.getAuthor().getIdLong())
+		if(accounts.getOwner(accountName) != request.getUserId())
 		{
-			msg.reply(notYourAccount()).complete();
+			reply(request, notYourAccount());
 			return;
 		}
-		if(args.length != 1)
+		if(args.size() != 1)
 		{
-			msg.reply("_Use it like_ `!loan <amount>` _ex._ `!loan 100000` _or_ `!loan 0.01`").complete();
+			reply(request, "_Use it like_ `!loan <amount>` _ex._ `!loan 100000` _or_ `!loan 0.01`");
 			return;
 		}
 
-		BigDecimal amount;
+		long amount;
 		try
 		{
-			amount = new BigDecimal(args[0]);
-			amount = amount.setScale(2, RoundingMode.HALF_UP);
+			amount = Money.parse(args.get(0), RoundingMode.HALF_UP);
 
-			if(amount.signum() <= 0)
+			if(amount <= 0)
 				throw new NumberFormatException();
 		}
-		catch (NumberFormatException ex)
+		catch (NumberFormatException | ArithmeticException ex)
 		{
-			msg.reply(decimalNumber()).complete();
+			reply(request, decimalNumber());
 			return;
 		}
 
-		Date timestamp = new Date();
-		Account account = accounts.load(accountName);
-		BigDecimal money = account.getMoney();
-		BigDecimal newMoney = money.add(amount);
-		account.setMoney(newMoney);
-		account.addLoan(timestamp, amount);
-		account.save();
-
-		msg.reply("_Loan approved for_ `" + Util.cashFmt(amount.doubleValue()) + "`_! Balance from_ `" + Util.cashFmt(money.doubleValue()) + "` _to_ `" + Util.cashFmt(newMoney.doubleValue()) + "`").complete();
+		long timestamp = System.currentTimeMillis();
+		long loan = amount;
+		String reply = accounts.fromAccount(accountName, account -> {
+			long money = account.getMoney();
+			long newMoney = Math.addExact(money, loan);
+			account.setMoney(newMoney);
+			account.addLoan(timestamp, loan);
+			account.markDirty();
+
+			return "_Loan approved for_ `" + Formats.cash(loan) + "`_! Balance from_ `" + Formats.cash(money) + "` _to_ `" + Formats.cash(newMoney) + "`";
+		});
+		reply(request, reply);
 	}
 
-	private void loansCommand(Message msg, String[] args, String accountName)
+	private void loansCommand(Request request, CommandLine args, String accountName)
 	{
 		if(accountName == null)
 		{
-			msg.reply(notMainUsage()).complete();
+			reply(request, notMainUsage());
 			return;
 		}
 
-		Account account = accounts.load(accountName);
-		Set<Map.Entry<Date, BigDecimal>> loans = account.getLoans();
+		ZoneId zone = timeZones.get(request.getUserId());
+		String reply = accounts.fromAccount(accountName, account -> renderLoans(account, zone));
+		if(reply == null)
+			reply(request, "_No loans taken out by this account! Try_ `!loan 20` _to borrow $20, then try this_");
+		else
+			reply(request, reply);
+	}
 
+	private String renderLoans(Account account, ZoneId zone)
+	{
+		Set<Map.Entry<Long, Long>> loans = account.getLoans();
 		if(loans.isEmpty())
-		{
-			msg.reply("_No loans taken out by this account! Try_ `!loan 20` _to borrow $20, then try this_").complete();
-			return;
-		}
+			return null;
 
 		StringBuilder sb = new StringBuilder();
 		sb.append("**Loans:**\n```\n");
-		for (Map.Entry<Date, BigDecimal> loan : loans)
+		for (Map.Entry<Long, Long> loan : loans)
 		{
-			sb.append(dateFormat.format(loan.getKey()));
+			Formats.appendTime(sb, loan.getKey(), zone);
 			sb.append(" -> ");
-			sb.append(Util.cashFmt(loan.getValue().doubleValue()));
+			Formats.appendCash(sb, loan.getValue());
 			sb.append('\n');
 		}
 		sb.append("```");
 
-		msg.reply(sb).complete();
+		return sb.toString();
 	}
 
-	private void cloneCommand(Message msg, String[] args, String accountName)
+	private void timezoneCommand(Request request, CommandLine args, String accountName)
+	{
+		long userID = request.getUserId();
+		if(args.size() > 1)
+		{
+			reply(request, "_Use it like_ `!timezone [zone]` _ex._ `!timezone America/New_York` _or_ `!timezone UTC`");
+			return;
+		}
+
+		ZoneId zone;
+		if(args.isEmpty())
+			zone = timeZones.get(userID);
+		else
+		{
+			try
+			{
+				zone = ZoneId.of(args.get(0), ZoneId.SHORT_IDS);
+			}
+			catch (DateTimeException ex)
+			{
+				reply(request, "_No such time zone..._ `" + args.get(0) + "`_, try a name like_ `Europe/London` _or an offset like_ `+05:30`");
+				return;
+			}
+			timeZones.set(userID, zone);
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("_Times are shown in_ `").append(zone.getId()).append("`_, it's_ `");
+		Formats.appendTime(sb, System.currentTimeMillis(), zone).append('`');
+		reply(request, sb);
+	}
+
+	private void cloneCommand(Request request, CommandLine args, String accountName)
 	{
 		if(accountName == null)
 		{
-			msg.reply(notMainUsage()).complete();
+			reply(request, notMainUsage());
 			return;
 		}
-		if(args.length != 1)
+		if(args.size() != 1)
 		{
-			msg.reply("_Use it like_ `!clone <name>` _ex._ `!clone Big-Ol-Titties` _or_ `!clone " + accountName + "1`").complete();
+			reply(request, "_Use it like_ `!clone <name>` _ex._ `!clone Big-Ol-Titties` _or_ `!clone " + accountName + "1`");
 			return;
 		}
 
-		msg.reply("_CLONE THIS ACCOUNT_").complete();
+		reply(request, "_CLONE THIS ACCOUNT_");
 	}
 
-	private void saveCommand(Message msg, String[] args, String accountName)
+	private void saveCommand(Request request, CommandLine args, String accountName)
 	{
-		Message message = msg.reply("_Saving..._").complete();
 		save();
-		message.editMessage("**Saved!**").complete();
+		reply(request, "**Saved!**");
 	}
 
-	private void helpCommand(Message msg, String[] args, String accountName)
+	private void statsCommand(Request request, CommandLine args, String accountName)
 	{
-		if(accountName != null && accounts.getOwner(accountName) != msg.getAuthor().getIdLong())
+		if(!isAdmin(request))
 		{
-			msg.reply("**This isn't your account!**").complete();
+			reply(request, "_Only admins can see stats!_");
+			return;
+		}
+		reply(request, stats.render());
+	}
+
+	// The users in cryptobot.admins, or whoever the transport trusts when nobody is listed there
+	boolean isAdmin(Request request)
+	{
+		if(!admins.isEmpty())
+			return admins.contains(request.getUserId());
+
+		return request.isAdmin();
+	}
+
+	private static Set<Long> parseAdmins(String list)
+	{
+		Set<Long> ids = new HashSet<>();
+		for (String id : list.split(","))
+		{
+			if(!id.trim().isEmpty())
+				ids.add(Long.parseLong(id.trim()));
+		}
+		return Collections.unmodifiableSet(ids);
+	}
+
+	private void helpCommand(Request request, CommandLine args, String accountName)
+	{
+		if(accountName != null && accounts.getOwner(accountName) != request.getUserId())
+		{
+			reply(request, "**This isn't your account!**");
 			return;
 		}
 
@@ -672,16 +1061,22 @@ public class Engine
 			sb.append("!sell <amount> <crypto> - Sell an amount of crypto using a balance of account crypto.\n");
 			sb.append("!in <time> <buy/sell> <amount> <crypto> - Buy/Sell an amount of crypto after a certain amount of time (see time)\n");
 			sb.append("!every <time> <buy/sell> <amount> <crypto> - Buy/Sell an amount of crypto every period of time (see time)\n");
+			sb.append("!jobs - List scheduled transactions of this account.\n");
+			sb.append("!cancel <id> - Cancel a scheduled transaction.\n");
 			sb.append("!balance - Show your current cash and crypto balances.\n");
 			sb.append("!loan <amount> - Loan a certain amount of money from the 'bank'.\n");
 			sb.append("!loans - List all loans taken by this account.\n");
-			sb.append("!trades - List all buy/sell trades performed by this account.\n");
+			sb.append("!trades [page] - List buy/sell trades performed by this account, newest first.\n");
 		}
 		else
 			sb.append("!account <name> - Create a new fake crypto account with a given name\n");
 
+		sb.append("!timezone [zone] - Show or set the time zone times are shown to you in.\n");
 		sb.append("!save - Save all accounts\n");
+		if(isAdmin(request))
+			sb.append("!stats - Show command latencies and error counts.\n");
 		sb.append("!help - Print this message\n");
+		sb.append("Commands that only show things can be shortened as long as only one starts that way, ex. !bal for !balance\n");
 
 		if (accountName != null)
 		{
@@ -696,10 +1091,10 @@ public class Engine
 			sb.append("Days can be specified using d, ds, day, days\n");
 		}
 		sb.append("```");
-		msg.reply(sb).complete();
+		reply(request, sb);
 	}
 
-	private long getMinutes(String arg)
+	static long getMinutes(String arg)
 	{
 		long minutes;
 		String s5 = arg.length() >= 5 ? arg.substring(0, arg.length() - 5) : null;
@@ -742,13 +1137,98 @@ public class Engine
 		return minutes;
 	}
 
+	// Trades a due job at the quote it was given, usually its tick's snapshot, so every job
+	// on a coin in a tick trades at one price. Too old a quote is refused like on !buy, but
+	// with cryptobot.trade.stale=queue this returns false and leaves the wait to Jobs,
+	// a job worker is never held up here
+	boolean execute(ScheduledTransaction job, Quote quote)
+	{
+		StringBuilder sb = new StringBuilder();
+		long age = quote.getAge(System.currentTimeMillis());
+		if(age > tradeMaxAge)
+		{
+			if(queueStaleTrades)
+				return false;
+			appendRefused(sb, job.crypto, age);
+		}
+		else
+			accounts.withAccount(job.accountName, account -> trade(account, job.crypto, job.amount, quote.price, job.buy, true, sb));
+
+		gateway.reply(accounts.getChannel(job.accountName), job.msgID, sb);
+		return true;
+	}
+
+	// A queued job whose fresh price never came
+	void drop(ScheduledTransaction job, Quote quote)
+	{
+		StringBuilder sb = new StringBuilder();
+		appendDropped(sb, job.crypto, quote.getAge(System.currentTimeMillis()));
+		gateway.reply(accounts.getChannel(job.accountName), job.msgID, sb);
+	}
+
 	void save()
 	{
 		System.out.println("Saving!");
-		service.shutdown();
+		System.out.println(prices);
+		System.out.println(executor);
+		System.out.println(scheduler);
+		accounts.flush();
+		System.out.println(accounts.cache);
 		accounts.save();
 	}
 
+	// Runs once, whether called directly or from the shutdown hook
+	void shutdown()
+	{
+		synchronized (this)
+		{
+			if(stopped)
+				return;
+			stopped = true;
+		}
+		stats.unregister();
+		if(priceFeed != null)
+			priceFeed.stop();
+		service.shutdown();
+		scheduler.shutdown();
+		executor.shutdown();
+		jobs.close();
+		save();
+	}
+
+	// Returns the amount in coin units, or 0 if it isn't a valid positive amount
+	static long parseAmount(String arg)
+	{
+		try
+		{
+			return Math.max(0, Quantity.parse(arg));
+		}
+		catch (NumberFormatException ex)
+		{
+			return 0;
+		}
+	}
+
+	private static PriceSource createPriceSource()
+	{
+		String file = System.getProperty("cryptobot.price.file");
+		if(file != null)
+			return new FilePriceSource(Paths.get(file));
+
+		// Several urls are hedged across, see HedgedPriceSource
+		List<PriceSource> sources = new ArrayList<>();
+		for (String url : System.getProperty("cryptobot.price.url", HttpPriceSource.CRYPTOCOMPARE).split(","))
+		{
+			if(!url.trim().isEmpty())
+				sources.add(new HttpPriceSource(url.trim()));
+		}
+		if(sources.size() == 1)
+			return sources.get(0);
+
+		return new HedgedPriceSource(sources, "median".equalsIgnoreCase(System.getProperty("cryptobot.price.combine", "first")),
+				Double.parseDouble(System.getProperty("cryptobot.price.hedge.percentile", "0.95")), Long.getLong("cryptobot.price.hedge.delay", 500L));
+	}
+
 	private String mainUsage()
 	{
 		return "_Use this in the_ <#948060159022891078> _channel._";
@@ -764,116 +1244,46 @@ public class Engine
 		return "**This isn't your account!**";
 	}
 
+	private String noSuchCrypto(String coin)
+	{
+		String reply = "_No such crypto..._ `" + coin + "`. _It might not be registered in the bot._";
+		Crypto suggestion = CryptoIndex.suggest(coin);
+		if(suggestion != null)
+			reply += " _Did you mean_ `" + suggestion.symbol + "` _(" + CryptoIndex.getName(suggestion) + ")?_";
+		return reply;
+	}
+
 	private String decimalNumber()
 	{
 		return "_Expected amount to be a positive decimal number! ex._ `1`, `0.5`, `414.4859`, `0.27297441`";
 	}
 
-	interface Command
+	// Why parseAmount turned a coin amount down
+	private String badAmount(String arg)
 	{
-		void run(Message msg, String[] args, String account) throws Exception;
+		if(Quantity.isTooFine(arg))
+			return "_Amounts can have at most " + Quantity.SCALE + " decimal places! ex._ `0.27297441`";
+		return decimalNumber();
 	}
 
-	static final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd hh:mm aa");
+	interface Command
+	{
+		void run(Request request, CommandLine args, String account) throws Exception;
+	}
 
-	private class ScheduledTransaction implements Runnable
+	// A command with its latencies, aliases share the command's
+	static class Route
 	{
-		private final String accountName;
-		private final Crypto crypto;
-		private final BigDecimal amount;
-		private final boolean buy;
-		private final long msgID;
+		final Command command;
+		final LatencyHistogram latency;
 
-		public ScheduledTransaction(String accountName, Crypto crypto, BigDecimal amount, boolean buy, long msgID)
+		Route(Command command, LatencyHistogram latency)
 		{
-			this.accountName = accountName;
-			this.crypto = crypto;
-			this.amount = amount;
-			this.buy = buy;
-			this.msgID = msgID;
-		}
-
-		@Override
-		public void run()
-		{
-			Account account = accounts.load(accountName);
-			BigDecimal unitPrice = BigDecimal.valueOf(Util.getCryptoPrice(crypto));
-			BigDecimal price = unitPrice.multiply(amount).setScale(2, buy ? RoundingMode.UP : RoundingMode.DOWN);
-			BigDecimal money = account.getMoney();
-			BigDecimal balance = account.getBalance(crypto);
-			BigDecimal newMoney = null, newBalance = null;
-			StringBuilder sb2 = new StringBuilder();
-			boolean dirty = false;
-
-			if (buy)
-			{
-				if (money.subtract(price).signum() >= 0)
-				{
-					newMoney = money.subtract(price);
-					newBalance = balance.add(amount);
-
-					account.setMoney(newMoney);
-					account.setBalance(crypto, newBalance);
-					dirty = true;
-				}
-				else
-				{
-					sb2.append("_You can't afford this! You need_ `");
-					sb2.append(Util.cashFmt(price.doubleValue()));
-					sb2.append("` _and you have_ `");
-					sb2.append(Util.cashFmt(money.doubleValue()));
-					sb2.append("`");
-				}
-			}
-			else
-			{
-				if (balance.subtract(amount).signum() >= 0)
-				{
-					newMoney = money.add(price);
-					newBalance = balance.subtract(amount);
-
-					account.setMoney(newMoney);
-					account.setBalance(crypto, newBalance);
-					dirty = true;
-				}
-				else
-				{
-					sb2.append("_You can't afford this! You need_ `");
-					sb2.append(amount.toPlainString());
-					sb2.append("` _");
-					sb2.append(crypto.symbol);
-					sb2.append(" and you have_ `");
-					sb2.append(balance.toPlainString());
-					sb2.append("`");
-				}
-			}
-
-			if (dirty)
-			{
-				if (buy)
-					sb2.append("_Purchasing_ `");
-				else
-					sb2.append("_Selling_ `");
-
-				sb2.append(amount.toPlainString());
-				sb2.append("` _");
-				sb2.append(crypto.symbol);
-				sb2.append(" for_ `");
-				sb2.append(Util.cashFmt(price.doubleValue()));
-				sb2.append("`\n");
-
-				sb2.append("**Money:** `");
-				sb2.append(Util.cashFmt(money.doubleValue()));
-				sb2.append("` -> `");
-				sb2.append(Util.cashFmt(newMoney.doubleValue()));
-				sb2.append("`");
-
-				account.addTransaction(new Transaction(money, newMoney, price, balance, newBalance, amount, unitPrice, crypto, buy, true));
-				account.save();
-			}
-
-			Objects.requireNonNull(jda.getTextChannelById(accounts.getChannel(accountName)))
-					.sendMessage(sb2).referenceById(msgID).complete();
+			this.command = command;
+			this.latency = latency;
 		}
 	}
+
+	static final int MESSAGE_LIMIT = 2000;
+	static final int TRADES_PER_PAGE = 20;
 }
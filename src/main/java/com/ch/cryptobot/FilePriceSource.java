@@ -0,0 +1,78 @@
+package com.ch.cryptobot;
+
+import com.hk.json.Json;
+import com.hk.json.JsonObject;
+import com.hk.json.JsonValue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Reads prices from a local json file like {"BTC": 40123.5, "DOGE": 0.13},
+// re-reading it whenever it changes, so the bot can run and be tested offline.
+class FilePriceSource implements PriceSource
+{
+	private final Path path;
+	private long lastModified = -1;
+	private Map<Crypto, Double> prices = new EnumMap<>(Crypto.class);
+
+	FilePriceSource(Path path)
+	{
+		this.path = path;
+	}
+
+	@Override
+	public double getPrice(Crypto crypto) throws IOException
+	{
+		Double price = refresh().get(crypto);
+		if(price == null)
+			throw new IOException("No price for " + crypto.symbol + " in " + path);
+
+		return price;
+	}
+
+	@Override
+	public Map<Crypto, Double> getPrices(Collection<Crypto> cryptos) throws IOException
+	{
+		Map<Crypto, Double> all = refresh();
+		Map<Crypto, Double> prices = new EnumMap<>(Crypto.class);
+		for (Crypto crypto : cryptos)
+		{
+			if(all.containsKey(crypto))
+				prices.put(crypto, all.get(crypto));
+		}
+		return prices;
+	}
+
+	private synchronized Map<Crypto, Double> refresh() throws IOException
+	{
+		long modified = Files.getLastModifiedTime(path).toMillis();
+		if(modified != lastModified)
+		{
+			JsonObject obj = Json.read(path.toFile()).getObject();
+			Map<Crypto, Double> prices = new EnumMap<>(Crypto.class);
+
+			Crypto crypto;
+			for (Map.Entry<String, JsonValue> entry : obj)
+			{
+				crypto = Crypto.bySymbol(entry.getKey());
+				if(crypto == null)
+					System.err.println("Unknown symbol in " + path + ": " + entry.getKey());
+				else
+					prices.put(crypto, entry.getValue().getDouble());
+			}
+			this.prices = prices;
+			lastModified = modified;
+		}
+		return prices;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "FilePriceSource{" + path + "}";
+	}
+}
@@ -0,0 +1,12 @@
+package com.ch.cryptobot;
+
+// Every coin at its own steady price, so nothing waits on the network. Behind
+// the local PriceServer, replays and benchmarks alike
+class FixedPrices implements PriceSource
+{
+	@Override
+	public double getPrice(Crypto crypto)
+	{
+		return 1.25 * (crypto.ordinal() + 1);
+	}
+}
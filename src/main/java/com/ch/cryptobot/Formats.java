@@ -0,0 +1,132 @@
+package com.ch.cryptobot;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Currency;
+import java.util.Locale;
+
+// Cash and times for replies, safe to use from any thread. Cash is written
+// straight from cents, like "$1,234.50" or "$12" when there are no cents,
+// with the US dollar pattern of the default locale worked out once.
+// Times are written in the zone the user picked, see TimeZones.
+final class Formats
+{
+	static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd hh:mm a");
+
+	private static final String POSITIVE_PREFIX, POSITIVE_SUFFIX, NEGATIVE_PREFIX, NEGATIVE_SUFFIX;
+	private static final char GROUPING, DECIMAL;
+	private static final int GROUP_SIZE;
+	private static final BigInteger HUNDRED = BigInteger.valueOf(100);
+
+	static
+	{
+		NumberFormat currency = NumberFormat.getCurrencyInstance();
+		DecimalFormat format = currency instanceof DecimalFormat ? (DecimalFormat) currency : (DecimalFormat) NumberFormat.getCurrencyInstance(Locale.US);
+		// Prices are always dollars, whatever the locale's own currency
+		format.setCurrency(Currency.getInstance("USD"));
+		DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+
+		POSITIVE_PREFIX = format.getPositivePrefix();
+		POSITIVE_SUFFIX = format.getPositiveSuffix();
+		NEGATIVE_PREFIX = format.getNegativePrefix();
+		NEGATIVE_SUFFIX = format.getNegativeSuffix();
+		GROUPING = symbols.getGroupingSeparator();
+		DECIMAL = symbols.getMonetaryDecimalSeparator();
+		GROUP_SIZE = format.isGroupingUsed() ? format.getGroupingSize() : 0;
+	}
+
+	private Formats() {}
+
+	static String cash(long cents)
+	{
+		return appendCash(new StringBuilder(24), cents).toString();
+	}
+
+	static String cash(BigDecimal amount)
+	{
+		return appendCash(new StringBuilder(24), amount).toString();
+	}
+
+	static String cash(double amount)
+	{
+		return appendCash(new StringBuilder(24), amount).toString();
+	}
+
+	static StringBuilder appendCash(StringBuilder sb, long cents)
+	{
+		boolean negative = cents < 0;
+		sb.append(negative ? NEGATIVE_PREFIX : POSITIVE_PREFIX);
+		int start = sb.length();
+		// Both halves are negated separately so Long.MIN_VALUE can't overflow
+		sb.append(Math.abs(cents / 100));
+		return finish(sb, start, (int) Math.abs(cents % 100), negative);
+	}
+
+	// Rounded half even to the cent, like NumberFormat did
+	static StringBuilder appendCash(StringBuilder sb, BigDecimal amount)
+	{
+		BigInteger cents = amount.setScale(2, RoundingMode.HALF_EVEN).unscaledValue();
+		if(cents.bitLength() < 64)
+			return appendCash(sb, cents.longValue());
+
+		boolean negative = cents.signum() < 0;
+		BigInteger[] parts = cents.abs().divideAndRemainder(HUNDRED);
+		sb.append(negative ? NEGATIVE_PREFIX : POSITIVE_PREFIX);
+		int start = sb.length();
+		sb.append(parts[0]);
+		return finish(sb, start, parts[1].intValue(), negative);
+	}
+
+	static StringBuilder appendCash(StringBuilder sb, double amount)
+	{
+		return appendCash(sb, BigDecimal.valueOf(amount));
+	}
+
+	static String time(long millis, ZoneId zone)
+	{
+		return appendTime(new StringBuilder(20), millis, zone).toString();
+	}
+
+	static StringBuilder appendTime(StringBuilder sb, long millis, ZoneId zone)
+	{
+		TIME.formatTo(Instant.ofEpochMilli(millis).atZone(zone), sb);
+		return sb;
+	}
+
+	// Roughly how long ago, "12s", "3m", "2h" or "5d"
+	static String age(long millis)
+	{
+		return appendAge(new StringBuilder(8), millis).toString();
+	}
+
+	static StringBuilder appendAge(StringBuilder sb, long millis)
+	{
+		long seconds = Math.max(0, millis) / 1000;
+		if(seconds < 60)
+			return sb.append(seconds).append('s');
+		if(seconds < 3600)
+			return sb.append(seconds / 60).append('m');
+		if(seconds < 86400)
+			return sb.append(seconds / 3600).append('h');
+		return sb.append(seconds / 86400).append('d');
+	}
+
+	private static StringBuilder finish(StringBuilder sb, int start, int fraction, boolean negative)
+	{
+		if(GROUP_SIZE > 0)
+		{
+			for (int i = sb.length() - GROUP_SIZE; i > start; i -= GROUP_SIZE)
+				sb.insert(i, GROUPING);
+		}
+		if(fraction != 0)
+			sb.append(DECIMAL).append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+		return sb.append(negative ? NEGATIVE_SUFFIX : POSITIVE_SUFFIX);
+	}
+}
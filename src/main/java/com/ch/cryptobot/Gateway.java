@@ -0,0 +1,15 @@
+package com.ch.cryptobot;
+
+// Everything the engine does on its own rather than in answer to a Request:
+// making account channels and posting to them.
+interface Gateway
+{
+	// The new channel's id
+	long createChannel(String name);
+
+	void deleteChannel(long channelID);
+
+	void send(long channelID, CharSequence text);
+
+	void reply(long channelID, long messageID, CharSequence text);
+}
@@ -0,0 +1,263 @@
+package com.ch.cryptobot;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Prices from several sources at once, to keep one slow answer off a trade.
+// The first source is asked and, when it hasn't answered after its own p95
+// latency or fails, the next one is asked too, whichever answers first wins.
+// Or every source is asked and a coin's price is the median of what a
+// majority of them said. Without a majority there's no price, rather than
+// one from a few sources, and the cache falls back to the last known one.
+// Either way the first source's own latency is kept, so what hedging saved
+// can be read off against what callers waited.
+class HedgedPriceSource implements PriceSource
+{
+	// Answers from the first source before its p95 is worth trusting
+	private static final int WARMUP = 20;
+	// Never hedge sooner, however quick the first source usually is
+	private static final long MIN_DELAY = 10;
+
+	private final List<PriceSource> sources;
+	private final boolean median;
+	private final double percentile;
+	private final long initialDelay;
+	private final AtomicInteger next;
+
+	final LatencyHistogram latency;
+	final LatencyHistogram primaryLatency;
+	private final LongAdder requests;
+	private final LongAdder hedges;
+	private final LongAdder hedgeWins;
+
+	HedgedPriceSource(List<PriceSource> sources, boolean median, double percentile, long initialDelay)
+	{
+		if(sources.size() < 2)
+			throw new IllegalArgumentException("Hedging needs at least 2 sources, got " + sources.size());
+		if(!(percentile > 0 && percentile < 1))
+			throw new IllegalArgumentException("percentile must be between 0 and 1: " + percentile);
+
+		this.sources = new ArrayList<>(sources);
+		this.median = median;
+		this.percentile = percentile;
+		this.initialDelay = initialDelay;
+		next = new AtomicInteger();
+		latency = new LatencyHistogram();
+		primaryLatency = new LatencyHistogram();
+		requests = new LongAdder();
+		hedges = new LongAdder();
+		hedgeWins = new LongAdder();
+	}
+
+	@Override
+	public double getPrice(Crypto crypto) throws IOException
+	{
+		Double price = getPrices(Collections.singleton(crypto)).get(crypto);
+		if(price == null)
+			throw new IOException("No price returned for " + crypto.symbol);
+		return price;
+	}
+
+	@Override
+	public Map<Crypto, Double> getPrices(Collection<Crypto> cryptos) throws IOException
+	{
+		try
+		{
+			return getPricesAsync(cryptos).join();
+		}
+		catch (CompletionException ex)
+		{
+			if(ex.getCause() instanceof IOException)
+				throw (IOException) ex.getCause();
+			throw ex;
+		}
+	}
+
+	@Override
+	public CompletableFuture<Map<Crypto, Double>> getPricesAsync(Collection<Crypto> cryptos)
+	{
+		if(cryptos.isEmpty())
+			return CompletableFuture.completedFuture(new EnumMap<>(Crypto.class));
+
+		long start = System.nanoTime();
+		requests.increment();
+		CompletableFuture<Map<Crypto, Double>> result = median ? median(cryptos, start) : hedge(cryptos, start);
+		return result.whenComplete((prices, ex) -> latency.recordSince(start));
+	}
+
+	private CompletableFuture<Map<Crypto, Double>> hedge(Collection<Crypto> cryptos, long start)
+	{
+		CompletableFuture<Map<Crypto, Double>> result = new CompletableFuture<>();
+		AtomicBoolean hedged = new AtomicBoolean();
+		AtomicInteger failed = new AtomicInteger();
+
+		Runnable hedge = () -> {
+			if(result.isDone() || !hedged.compareAndSet(false, true))
+				return;
+
+			hedges.increment();
+			ask(nextSource(), cryptos).whenComplete((prices, ex) -> {
+				if(ex == null)
+				{
+					if(result.complete(prices))
+						hedgeWins.increment();
+				}
+				else if(failed.incrementAndGet() == 2)
+					result.completeExceptionally(unwrap(ex));
+			});
+		};
+
+		ask(sources.get(0), cryptos).whenComplete((prices, ex) -> {
+			primaryLatency.recordSince(start);
+			if(ex == null)
+				result.complete(prices);
+			else if(failed.incrementAndGet() == 2)
+				result.completeExceptionally(unwrap(ex));
+			else
+				hedge.run();
+		});
+
+		if(!result.isDone())
+			CompletableFuture.runAsync(hedge, CompletableFuture.delayedExecutor(getHedgeDelay(), TimeUnit.MILLISECONDS));
+		return result;
+	}
+
+	// Done once a majority answered, failed once too many failed for one to
+	private CompletableFuture<Map<Crypto, Double>> median(Collection<Crypto> cryptos, long start)
+	{
+		CompletableFuture<Map<Crypto, Double>> result = new CompletableFuture<>();
+		List<Map<Crypto, Double>> answers = new ArrayList<>(sources.size());
+		List<Throwable> errors = new ArrayList<>(sources.size());
+		int quorum = getQuorum();
+
+		for (int i = 0; i < sources.size(); i++)
+		{
+			boolean primary = i == 0;
+			ask(sources.get(i), cryptos).whenComplete((prices, ex) -> {
+				if(primary)
+					primaryLatency.recordSince(start);
+				synchronized (answers)
+				{
+					if(ex == null)
+						answers.add(prices);
+					else
+						errors.add(unwrap(ex));
+					if(result.isDone())
+						return;
+
+					if(answers.size() >= quorum)
+						result.complete(combine(cryptos, answers, quorum));
+					else if(errors.size() > sources.size() - quorum)
+					{
+						IOException failure = new IOException("No majority of " + sources.size() + " price sources answered, " + errors.size() + " failed");
+						for (Throwable error : errors)
+							failure.addSuppressed(error);
+						result.completeExceptionally(failure);
+					}
+				}
+			});
+		}
+		return result;
+	}
+
+	// Coins fewer than quorum answers have a price for are left out
+	private static Map<Crypto, Double> combine(Collection<Crypto> cryptos, List<Map<Crypto, Double>> answers, int quorum)
+	{
+		Map<Crypto, Double> prices = new EnumMap<>(Crypto.class);
+		double[] values = new double[answers.size()];
+		for (Crypto crypto : cryptos)
+		{
+			int count = 0;
+			for (Map<Crypto, Double> answer : answers)
+			{
+				Double price = answer.get(crypto);
+				if(price != null)
+					values[count++] = price;
+			}
+			if(count < quorum)
+				continue;
+
+			Arrays.sort(values, 0, count);
+			prices.put(crypto, count % 2 == 1 ? values[count / 2] : (values[count / 2 - 1] + values[count / 2]) / 2);
+		}
+		return prices;
+	}
+
+	// Hedges take turns among the sources after the first
+	private PriceSource nextSource()
+	{
+		return sources.get(1 + Math.floorMod(next.getAndIncrement(), sources.size() - 1));
+	}
+
+	// Fails with a CompletionException around the IOException, whatever the source threw
+	private static CompletableFuture<Map<Crypto, Double>> ask(PriceSource source, Collection<Crypto> cryptos)
+	{
+		try
+		{
+			return source.getPricesAsync(cryptos);
+		}
+		catch (RuntimeException ex)
+		{
+			return CompletableFuture.failedFuture(new IOException("Couldn't get prices from " + source, ex));
+		}
+	}
+
+	private static Throwable unwrap(Throwable ex)
+	{
+		return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+	}
+
+	// The first source's p95 once it has answered enough, the configured delay until then
+	long getHedgeDelay()
+	{
+		if(primaryLatency.getCountValue() < WARMUP)
+			return initialDelay;
+		return Math.max(MIN_DELAY, TimeUnit.NANOSECONDS.toMillis(primaryLatency.getPercentile(percentile)));
+	}
+
+	int getQuorum()
+	{
+		return sources.size() / 2 + 1;
+	}
+
+	boolean isMedian()
+	{
+		return median;
+	}
+
+	long getRequests()
+	{
+		return requests.sum();
+	}
+
+	long getHedges()
+	{
+		return hedges.sum();
+	}
+
+	long getHedgeWins()
+	{
+		return hedgeWins.sum();
+	}
+
+	// Share of requests that sent a second one
+	double getHedgeRate()
+	{
+		long count = requests.sum();
+		return count == 0 ? 0 : (double) hedges.sum() / count;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "HedgedPriceSource{" + (median ? "median" : "first") + ", sources=" + sources + ", requests=" + getRequests() +
+				", hedges=" + getHedges() + ", hedgeWins=" + getHedgeWins() + ", delay=" + getHedgeDelay() + "ms" +
+				", p99=" + Stats.duration(latency.getPercentile(0.99)) + ", primaryP99=" + Stats.duration(primaryLatency.getPercentile(0.99)) + "}";
+	}
+}
@@ -0,0 +1,196 @@
+package com.ch.cryptobot;
+
+import com.hk.json.Json;
+import com.hk.json.JsonObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+// Prices from a CryptoCompare style API. Every request goes through one
+// HttpClient, so connections are kept alive and shared (HTTP/2 where the
+// server speaks it), and nothing waits longer than the timeouts.
+class HttpPriceSource implements PriceSource
+{
+	static final String CRYPTOCOMPARE = "https://min-api.cryptocompare.com/data";
+
+	private final String baseUrl;
+	private final Duration timeout;
+	private final HttpClient client;
+	final LatencyHistogram latency;
+	private final LongAdder failures;
+
+	HttpPriceSource(String baseUrl)
+	{
+		this(baseUrl, Duration.ofMillis(Long.getLong("cryptobot.price.connect.timeout", 2000L)),
+				Duration.ofMillis(Long.getLong("cryptobot.price.timeout", 5000L)));
+	}
+
+	HttpPriceSource(String baseUrl, Duration connectTimeout, Duration timeout)
+	{
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+		this.timeout = timeout;
+		client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.connectTimeout(connectTimeout)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build();
+		latency = new LatencyHistogram();
+		failures = new LongAdder();
+	}
+
+	@Override
+	public double getPrice(Crypto crypto) throws IOException
+	{
+		return toPrice(crypto, read(priceUrl(crypto)));
+	}
+
+	@Override
+	public Map<Crypto, Double> getPrices(Collection<Crypto> cryptos) throws IOException
+	{
+		if(cryptos.isEmpty())
+			return new EnumMap<>(Crypto.class);
+
+		return toPrices(cryptos, read(pricesUrl(cryptos)));
+	}
+
+	@Override
+	public CompletableFuture<Map<Crypto, Double>> getPricesAsync(Collection<Crypto> cryptos)
+	{
+		if(cryptos.isEmpty())
+			return CompletableFuture.completedFuture(new EnumMap<>(Crypto.class));
+
+		return readAsync(pricesUrl(cryptos)).thenApply(obj -> toPrices(cryptos, obj));
+	}
+
+	private String priceUrl(Crypto crypto)
+	{
+		return baseUrl + "/price?fsym=" + crypto.symbol + "&tsyms=USD";
+	}
+
+	private String pricesUrl(Collection<Crypto> cryptos)
+	{
+		StringBuilder sb = new StringBuilder(baseUrl).append("/pricemulti?fsyms=");
+		int start = sb.length();
+		for (Crypto crypto : cryptos)
+		{
+			if(sb.length() > start)
+				sb.append(',');
+			sb.append(crypto.symbol);
+		}
+		return sb.append("&tsyms=USD").toString();
+	}
+
+	private static double toPrice(Crypto crypto, JsonObject obj) throws IOException
+	{
+		if(!obj.contains("USD"))
+			throw new IOException("No price returned for " + crypto.symbol);
+
+		return obj.getDouble("USD");
+	}
+
+	private static Map<Crypto, Double> toPrices(Collection<Crypto> cryptos, JsonObject obj)
+	{
+		Map<Crypto, Double> prices = new EnumMap<>(Crypto.class);
+		for (Crypto crypto : cryptos)
+		{
+			if(obj.contains(crypto.symbol))
+				prices.put(crypto, obj.getObject(crypto.symbol).getDouble("USD"));
+		}
+		return prices;
+	}
+
+	private HttpRequest request(String url)
+	{
+		return HttpRequest.newBuilder(URI.create(url))
+				.timeout(timeout)
+				.header("Accept", "application/json")
+				.GET()
+				.build();
+	}
+
+	private JsonObject read(String url) throws IOException
+	{
+		long start = System.nanoTime();
+		try
+		{
+			return parse(url, client.send(request(url), HttpResponse.BodyHandlers.ofString()));
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted getting " + url);
+		}
+		catch (IOException ex)
+		{
+			failures.increment();
+			throw ex;
+		}
+		finally
+		{
+			latency.recordSince(start);
+		}
+	}
+
+	// Fails with a CompletionException around the IOException
+	private CompletableFuture<JsonObject> readAsync(String url)
+	{
+		long start = System.nanoTime();
+		return client.sendAsync(request(url), HttpResponse.BodyHandlers.ofString()).handle((response, ex) -> {
+			latency.recordSince(start);
+			try
+			{
+				if(ex != null)
+					throw ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+				return parse(url, response);
+			}
+			catch (Throwable cause)
+			{
+				failures.increment();
+				throw cause instanceof IOException ? new CompletionException(cause) : new CompletionException(new IOException("Couldn't get " + url, cause));
+			}
+		});
+	}
+
+	private static JsonObject parse(String url, HttpResponse<String> response) throws IOException
+	{
+		if(response.statusCode() != 200)
+			throw new IOException("HTTP " + response.statusCode() + " from " + url);
+
+		try
+		{
+			return Json.read(response.body()).getObject();
+		}
+		catch (RuntimeException ex)
+		{
+			throw new IOException("Bad response from " + url, ex);
+		}
+	}
+
+	long getRequests()
+	{
+		return latency.getCountValue();
+	}
+
+	long getFailures()
+	{
+		return failures.sum();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "HttpPriceSource{" + baseUrl + ", requests=" + getRequests() + ", failures=" + getFailures() +
+				", p50=" + Stats.duration(latency.getPercentile(0.5)) + ", p99=" + Stats.duration(latency.getPercentile(0.99)) + "}";
+	}
+}
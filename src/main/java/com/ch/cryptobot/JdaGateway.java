@@ -0,0 +1,52 @@
+package com.ch.cryptobot;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Category;
+import net.dv8tion.jda.api.entities.TextChannel;
+
+import java.util.Objects;
+
+// Account channels live in one Discord category
+class JdaGateway implements Gateway
+{
+	final JDA jda;
+	final long categoryID;
+
+	JdaGateway(JDA jda, long categoryID)
+	{
+		this.jda = jda;
+		this.categoryID = categoryID;
+	}
+
+	@Override
+	public long createChannel(String name)
+	{
+		Category category = Objects.requireNonNull(jda.getCategoryById(categoryID));
+		return category.createTextChannel(name).complete().getIdLong();
+	}
+
+	@Override
+	public void deleteChannel(long channelID)
+	{
+		TextChannel channel = jda.getTextChannelById(channelID);
+		if(channel != null)
+			channel.delete().queue();
+	}
+
+	@Override
+	public void send(long channelID, CharSequence text)
+	{
+		getChannel(channelID).sendMessage(text).queue();
+	}
+
+	@Override
+	public void reply(long channelID, long messageID, CharSequence text)
+	{
+		getChannel(channelID).sendMessage(text).referenceById(messageID).queue();
+	}
+
+	private TextChannel getChannel(long channelID)
+	{
+		return Objects.requireNonNull(jda.getTextChannelById(channelID), () -> "No channel " + channelID);
+	}
+}
@@ -0,0 +1,57 @@
+package com.ch.cryptobot;
+
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Message;
+
+import java.util.concurrent.CompletableFuture;
+
+// A Discord message as a Request
+class JdaRequest implements Request
+{
+	final Message msg;
+	private final String channel;
+
+	JdaRequest(Message msg, String channel)
+	{
+		this.msg = msg;
+		this.channel = channel;
+	}
+
+	@Override
+	public long getId()
+	{
+		return msg.getIdLong();
+	}
+
+	@Override
+	public long getUserId()
+	{
+		return msg.getAuthor().getIdLong();
+	}
+
+	@Override
+	public String getChannel()
+	{
+		return channel;
+	}
+
+	@Override
+	public boolean isAdmin()
+	{
+		Member member = msg.getMember();
+		return member != null && member.hasPermission(Permission.ADMINISTRATOR);
+	}
+
+	@Override
+	public CompletableFuture<?> reply(CharSequence text)
+	{
+		return msg.reply(text).submit();
+	}
+
+	@Override
+	public CompletableFuture<?> send(CharSequence text)
+	{
+		return msg.getChannel().sendMessage(text).submit();
+	}
+}
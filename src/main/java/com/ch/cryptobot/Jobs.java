@@ -0,0 +1,334 @@
+package com.ch.cryptobot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The !in and !every transactions. Every change is appended to jobs.log so
+// they survive restarts, the log is compacted at startup and when it grows.
+//
+//   A <id> <account> <symbol> <amount> <buy> <msgID> <period> <nextFire>  added
+//   N <id> <nextFire>                                                    ran, next run
+//   R <id>                                                               removed
+class Jobs
+{
+	final Engine engine;
+	private final Path path;
+	private final boolean catchUp;
+	private final Map<Long, ScheduledTransaction> jobs;
+	private final Map<String, Set<Long>> accountJobs;
+	private final AtomicLong ids;
+	private Writer log;
+	private int logLines;
+
+	Jobs(Engine engine, Path path, boolean catchUp)
+	{
+		this.engine = engine;
+		this.path = path;
+		this.catchUp = catchUp;
+		jobs = new ConcurrentHashMap<>();
+		accountJobs = new ConcurrentHashMap<>();
+		ids = new AtomicLong();
+
+		try
+		{
+			long start = System.nanoTime();
+			load();
+			compact();
+			for (ScheduledTransaction job : jobs.values())
+				schedule(job);
+			System.out.println("Recovered " + jobs.size() + " scheduled transaction(s) in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+		}
+		catch (IOException ex)
+		{
+			throw new UncheckedIOException("Issue recovering scheduled transactions from " + path, ex);
+		}
+	}
+
+	long nextId()
+	{
+		return ids.incrementAndGet();
+	}
+
+	void add(ScheduledTransaction job)
+	{
+		jobs.put(job.id, job);
+		accountJobs.computeIfAbsent(job.accountName, k -> ConcurrentHashMap.newKeySet()).add(job.id);
+		write("A " + job.toRecord());
+		schedule(job);
+	}
+
+	ScheduledTransaction get(long id)
+	{
+		return jobs.get(id);
+	}
+
+	List<ScheduledTransaction> getJobs(String accountName)
+	{
+		Set<Long> ids = accountJobs.get(accountName);
+		if(ids == null)
+			return Collections.emptyList();
+
+		List<ScheduledTransaction> list = new ArrayList<>(ids.size());
+		ScheduledTransaction job;
+		for (Long id : ids)
+		{
+			job = jobs.get(id);
+			if(job != null)
+				list.add(job);
+		}
+		list.sort(Comparator.comparingLong(j -> j.id));
+		return list;
+	}
+
+	boolean cancel(long id)
+	{
+		// Whatever is left in the scheduler sees the job is gone when it fires
+		return remove(id) != null;
+	}
+
+	int size()
+	{
+		return jobs.size();
+	}
+
+	private ScheduledTransaction remove(long id)
+	{
+		ScheduledTransaction job = jobs.remove(id);
+		if(job != null)
+		{
+			Set<Long> ids = accountJobs.get(job.accountName);
+			if(ids != null)
+				ids.remove(id);
+			write("R " + id);
+		}
+		return job;
+	}
+
+	private void schedule(ScheduledTransaction job)
+	{
+		engine.scheduler.schedule(new Firing(job), job.nextFire);
+	}
+
+	// quote is null when the job has to fetch its own price
+	private void fire(ScheduledTransaction job, Quote quote)
+	{
+		if(jobs.get(job.id) != job)
+			return;
+
+		boolean queued = false;
+		try
+		{
+			Quote price = quote == null ? engine.prices.getQuote(job.crypto) : quote;
+			queued = !engine.execute(job, price);
+			if(queued)
+				awaitPrice(job, price);
+		}
+		catch (Exception e)
+		{
+			System.err.println("Issue with scheduled transaction #" + job.id);
+			e.printStackTrace();
+		}
+
+		if(job.isRepeating())
+		{
+			// A job that ran late, like catching up after downtime, ran once for all the slots it
+			// missed and carries on from the first slot still ahead, the same one skipping picks
+			long period = job.getPeriodMillis();
+			long now = System.currentTimeMillis();
+			job.nextFire += period;
+			if(job.nextFire <= now)
+				job.nextFire += ((now - job.nextFire) / period + 1) * period;
+			if(jobs.get(job.id) == job)
+			{
+				write("N " + job.id + " " + job.nextFire);
+				schedule(job);
+			}
+		}
+		else if(!queued)
+			remove(job.id);
+	}
+
+	// A trade queued behind a stale price runs once a fresh one comes in, or is dropped
+	// after cryptobot.trade.wait. Jobs on a coin share the one refresh, nothing blocks on it,
+	// and the copy keeps the timeout from failing the refresh for anyone else
+	private void awaitPrice(ScheduledTransaction job, Quote stale)
+	{
+		engine.prices.refresh(job.crypto).copy().orTimeout(engine.tradeWait, TimeUnit.MILLISECONDS).whenComplete((fresh, ex) -> {
+			if(jobs.get(job.id) != job)
+				return;
+
+			try
+			{
+				if(fresh == null || !engine.execute(job, fresh))
+					engine.drop(job, stale);
+			}
+			catch (Exception e)
+			{
+				System.err.println("Issue with scheduled transaction #" + job.id);
+				e.printStackTrace();
+			}
+			finally
+			{
+				if(!job.isRepeating())
+					remove(job.id);
+			}
+		});
+	}
+
+	private class Firing implements Scheduler.PricedTask
+	{
+		private final ScheduledTransaction job;
+
+		Firing(ScheduledTransaction job)
+		{
+			this.job = job;
+		}
+
+		@Override
+		public Crypto getCrypto()
+		{
+			return job.crypto;
+		}
+
+		@Override
+		public void run()
+		{
+			fire(job, null);
+		}
+
+		@Override
+		public void run(Quote quote)
+		{
+			fire(job, quote);
+		}
+	}
+
+	private void load() throws IOException
+	{
+		if(!Files.exists(path))
+			return;
+
+		long maxId = 0;
+		try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+		{
+			String line;
+			String[] fields;
+			ScheduledTransaction job;
+			while ((line = in.readLine()) != null)
+			{
+				fields = line.split(" ");
+				try
+				{
+					long id = Long.parseLong(fields[1]);
+					maxId = Math.max(maxId, id);
+					switch (fields[0])
+					{
+						case "A":
+							jobs.put(id, new ScheduledTransaction(id, fields, 2));
+							break;
+						case "N":
+							job = jobs.get(id);
+							if(job != null)
+								job.nextFire = Long.parseLong(fields[2]);
+							break;
+						case "R":
+							jobs.remove(id);
+							break;
+						default:
+							throw new IllegalArgumentException("unknown entry");
+					}
+				}
+				catch (RuntimeException ex)
+				{
+					// Most likely the end of a write cut short by a crash
+					System.err.println("Ignoring bad line in " + path + ": " + line);
+				}
+			}
+		}
+		ids.set(maxId);
+
+		long now = System.currentTimeMillis();
+		for (ScheduledTransaction job : new ArrayList<>(jobs.values()))
+		{
+			if(job.nextFire < now && !catchUp)
+			{
+				// Skipping: one-offs that were missed are dropped, repeating ones resume at their next slot
+				if(!job.isRepeating())
+				{
+					System.out.println("Dropping missed scheduled transaction #" + job.id);
+					jobs.remove(job.id);
+					continue;
+				}
+				long missed = (now - job.nextFire) / job.getPeriodMillis() + 1;
+				job.nextFire += missed * job.getPeriodMillis();
+			}
+			// Catching up: anything missed runs once right away, then repeating ones skip to their next slot, see fire
+			accountJobs.computeIfAbsent(job.accountName, k -> ConcurrentHashMap.newKeySet()).add(job.id);
+		}
+	}
+
+	private synchronized void write(String line)
+	{
+		try
+		{
+			log.write(line);
+			log.write('\n');
+			log.flush();
+			logLines++;
+
+			if(logLines > 2 * jobs.size() + 1000)
+				compact();
+		}
+		catch (IOException ex)
+		{
+			throw new UncheckedIOException("Issue writing scheduled transactions to " + path, ex);
+		}
+	}
+
+	// Rewrites the log with only what is still scheduled
+	private synchronized void compact() throws IOException
+	{
+		if(log != null)
+			log.close();
+
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+		{
+			for (ScheduledTransaction job : jobs.values())
+			{
+				out.write("A ");
+				out.write(job.toRecord());
+				out.write('\n');
+			}
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		logLines = jobs.size();
+		log = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	synchronized void close()
+	{
+		try
+		{
+			compact();
+			log.close();
+		}
+		catch (IOException ex)
+		{
+			System.err.println("Issue saving scheduled transactions to " + path);
+			ex.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package com.ch.cryptobot;
+
+import com.hk.json.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+
+// <name>.json holds the account with every number as a string and
+// <name>.log one trade per line, see Transaction.toRecord
+class JsonAccountStore implements AccountStore
+{
+	final Path dir;
+
+	JsonAccountStore(Path dir)
+	{
+		this.dir = dir;
+	}
+
+	@Override
+	public boolean exists(String name)
+	{
+		return Files.exists(getPath(name));
+	}
+
+	@Override
+	public Account read(String name) throws IOException
+	{
+		return read(name, this);
+	}
+
+	// Reads the account for another store, which then owns it
+	Account read(String name, AccountStore store) throws IOException
+	{
+		JsonValue value = Json.read(getPath(name).toFile());
+		if(!value.isObject())
+			throw new JsonAdaptationException("expected json object");
+		JsonObject obj = value.getObject();
+
+		Account account = new Account(store, obj.getLong("owner"), obj.getLong("channel"), obj.getString("name"));
+
+		if(obj.contains("money"))
+			account.setMoney(Money.parse(obj.getString("money"), RoundingMode.FLOOR));
+
+		if(obj.contains("balances"))
+		{
+			for (Map.Entry<String, JsonValue> entry : obj.getObject("balances"))
+				account.setBalance(Crypto.bySymbol(entry.getKey()), Quantity.parseStored(entry.getValue().getString()));
+		}
+
+		if(obj.contains("loans"))
+		{
+			for (Map.Entry<String, JsonValue> entry : obj.getObject("loans"))
+				account.addLoan(Long.parseLong(entry.getKey()), Money.parse(entry.getValue().getString(), RoundingMode.HALF_UP));
+		}
+
+		if(obj.contains("transactions"))
+		{
+			// Older files keep every trade in the account file, the first save moves them to the log
+			for (JsonValue transaction : obj.getArray("transactions"))
+				account.addTransaction(new Transaction(transaction.getObject()));
+		}
+		else if(obj.contains("trades"))
+			readLog(account, obj.getInt("trades"));
+
+		return account;
+	}
+
+	private void readLog(Account account, int count) throws IOException
+	{
+		if(count == 0)
+			return;
+
+		Path path = getLogPath(account.name);
+		TransactionHistory transactions = account.getTransactions();
+		long end = 0;
+		try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.US_ASCII))
+		{
+			String line;
+			while (transactions.size() < count && (line = in.readLine()) != null)
+			{
+				transactions.add(new Transaction(line));
+				end += line.length() + 1;
+			}
+		}
+		if(transactions.size() < count)
+			throw new IOException("Expected " + count + " trades but found " + transactions.size() + " in " + path);
+
+		// Anything past the committed trades was written by a save that never finished
+		if(Files.size(path) > end)
+		{
+			System.err.println("Dropping uncommitted trades at the end of " + path);
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+			{
+				channel.truncate(end);
+			}
+		}
+		account.setStored(count, end);
+	}
+
+	@Override
+	public void write(Account account) throws IOException
+	{
+		// The trades are only committed once the account file counting them is written
+		long end = appendLog(account);
+		writeHeader(account);
+		account.setStored(account.getTransactions().size(), end);
+	}
+
+	private long appendLog(Account account) throws IOException
+	{
+		TransactionHistory transactions = account.getTransactions();
+		if(account.getStored() == transactions.size())
+			return account.getStoredEnd();
+
+		StringBuilder sb = new StringBuilder((transactions.size() - account.getStored()) * 96);
+		for (int i = account.getStored(); i < transactions.size(); i++)
+			sb.append(transactions.get(i).toRecord()).append('\n');
+		ByteBuffer buffer = StandardCharsets.US_ASCII.encode(sb.toString());
+
+		long end = account.getStoredEnd();
+		try (FileChannel channel = FileChannel.open(getLogPath(account.name), StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+		{
+			// Drops whatever an earlier failed save left behind
+			channel.truncate(end);
+			channel.position(end);
+			while (buffer.hasRemaining())
+				end += channel.write(buffer);
+		}
+		return end;
+	}
+
+	private void writeHeader(Account account) throws IOException
+	{
+		JsonObject obj = new JsonObject();
+
+		obj.put("owner", account.ownerID);
+		obj.put("channel", account.channelID);
+		obj.put("name", account.name);
+
+		obj.put("money", Money.toPlainString(account.getMoney()));
+
+		if(account.hasBalances())
+		{
+			JsonObject balances = new JsonObject();
+			for (Crypto crypto : account.getHeldCryptos())
+				balances.put(crypto.symbol, Quantity.toPlainString(account.getBalance(crypto)));
+
+			obj.put("balances", balances);
+		}
+		if(!account.getLoans().isEmpty())
+		{
+			JsonObject loans = new JsonObject();
+			for (Map.Entry<Long, Long> entry : account.getLoans())
+				loans.put(Long.toString(entry.getKey()), Money.toPlainString(entry.getValue()));
+
+			obj.put("loans", loans);
+		}
+		obj.put("trades", account.getTransactions().size());
+
+		Path path = getPath(account.name);
+		Path temp = path.resolveSibling(account.name + ".json.tmp");
+		Json.writer(temp.toFile()).setPrettyPrint().put(obj).close();
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Override
+	public long size(String name) throws IOException
+	{
+		Path log = getLogPath(name);
+		return Files.size(getPath(name)) + (Files.exists(log) ? Files.size(log) : 0);
+	}
+
+	Path getPath(String name)
+	{
+		return dir.resolve(name + ".json");
+	}
+
+	Path getLogPath(String name)
+	{
+		return dir.resolve(name + ".log");
+	}
+}
@@ -0,0 +1,137 @@
+package com.ch.cryptobot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts of durations in log-linear buckets, 32 to each power of two, so a
+// percentile is off by at most about 3%. Recording is a few atomic adds on
+// preallocated counters, it never locks or allocates. Reads walk the buckets
+// while recording goes on, so they can be a few samples behind.
+class LatencyHistogram implements LatencyMXBean
+{
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	// Anything longer, about 18 minutes, lands in the last bucket
+	private static final long LIMIT = (1L << 40) - 1;
+
+	private final AtomicLongArray counts;
+	private final LongAdder total;
+	private final AtomicLong max;
+
+	LatencyHistogram()
+	{
+		counts = new AtomicLongArray(index(LIMIT) + 1);
+		total = new LongAdder();
+		max = new AtomicLong();
+	}
+
+	void record(long nanos)
+	{
+		if(nanos < 0)
+			nanos = 0;
+		counts.incrementAndGet(index(Math.min(nanos, LIMIT)));
+		total.add(nanos);
+		max.accumulateAndGet(nanos, Math::max);
+	}
+
+	// Records the time since a System.nanoTime() start
+	void recordSince(long start)
+	{
+		record(System.nanoTime() - start);
+	}
+
+	long getCountValue()
+	{
+		long count = 0;
+		for (int i = 0; i < counts.length(); i++)
+			count += counts.get(i);
+		return count;
+	}
+
+	// The smallest duration at least that fraction of samples took no longer than, 0 without samples
+	long getPercentile(double fraction)
+	{
+		long count = getCountValue();
+		if(count == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++)
+		{
+			seen += counts.get(i);
+			if(seen >= rank)
+				return Math.min(highest(i), max.get());
+		}
+		return max.get();
+	}
+
+	long getMaxValue()
+	{
+		return max.get();
+	}
+
+	long getMeanValue()
+	{
+		long count = getCountValue();
+		return count == 0 ? 0 : total.sum() / count;
+	}
+
+	@Override
+	public long getCount()
+	{
+		return getCountValue();
+	}
+
+	@Override
+	public double getMeanMillis()
+	{
+		return getMeanValue() / 1e6;
+	}
+
+	@Override
+	public double getP50Millis()
+	{
+		return getPercentile(0.5) / 1e6;
+	}
+
+	@Override
+	public double getP99Millis()
+	{
+		return getPercentile(0.99) / 1e6;
+	}
+
+	@Override
+	public double getP999Millis()
+	{
+		return getPercentile(0.999) / 1e6;
+	}
+
+	@Override
+	public double getMaxMillis()
+	{
+		return getMaxValue() / 1e6;
+	}
+
+	// Values under 32 get a bucket each, then every power of two is split in 32
+	private static int index(long value)
+	{
+		if(value < SUB_COUNT)
+			return (int) value;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+		return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+
+	private static long highest(int index)
+	{
+		if(index < SUB_COUNT)
+			return index;
+
+		int shift = index / SUB_COUNT - 1;
+		long lowest = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,17 @@
+package com.ch.cryptobot;
+
+// A command's or a stage's latencies over JMX, see Stats
+public interface LatencyMXBean
+{
+	long getCount();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP99Millis();
+
+	double getP999Millis();
+
+	double getMaxMillis();
+}
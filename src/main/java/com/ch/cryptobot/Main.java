@@ -12,7 +12,6 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
 import java.util.Objects;
 
 public class Main extends ListenerAdapter
@@ -28,7 +27,7 @@ public class Main extends ListenerAdapter
 				.build();
 		jda.awaitReady();
 
-		engine = new Engine(jda, path);
+		engine = new Engine(new JdaGateway(jda, 948059969754906634L), path);
 
 		Guild guild = jda.getGuildById(823326124452478986L);
 
@@ -52,21 +51,14 @@ public class Main extends ListenerAdapter
 		if(cat == null || !"crypto accounts".equalsIgnoreCase(msg.getCategory().getName()))
 			return;
 
-		String cmd = msg.getContentRaw();
-		if(!cmd.startsWith("!"))
+		String content = msg.getContentRaw();
+		if(!content.startsWith("!"))
 			return;
-		cmd = cmd.substring(1);
-		if(cmd.trim().isEmpty())
+		CommandLine line = engine.parse(content, 1);
+		if(line.isEmpty())
 			return;
 
-		String[] args = cmd.split(" ");
-		if(args.length > 0)
-		{
-			cmd = args[0];
-			args = Arrays.copyOfRange(args, 1, args.length);
-		}
-
-		engine.run(msg, cmd, args, event.getChannel().getName());
+		engine.submit(new JdaRequest(msg, event.getChannel().getName()), line);
 	}
 
 	public static void main(String[] args) throws IOException, LoginException, InterruptedException
@@ -0,0 +1,62 @@
+package com.ch.cryptobot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// The binary account header as <name>.mapped and the trades in memory-mapped
+// segments next to it, see MappedTransactionHistory
+class MappedAccountStore extends BinaryAccountStore
+{
+	MappedAccountStore(Path dir)
+	{
+		super(dir);
+	}
+
+	@Override
+	public TransactionHistory newHistory(String name)
+	{
+		return new MappedTransactionHistory(dir, name);
+	}
+
+	@Override
+	void readTrades(Account account, int count, long end) throws IOException
+	{
+		((MappedTransactionHistory) account.getTransactions()).recover(count);
+		account.setStored(count, 0);
+	}
+
+	@Override
+	long writeTrades(Account account)
+	{
+		if(account.getTransactions() instanceof MappedTransactionHistory)
+			((MappedTransactionHistory) account.getTransactions()).force(account.getStored());
+		else
+		{
+			// Read by another store, see AccountConverter
+			MappedTransactionHistory history = new MappedTransactionHistory(dir, account.name);
+			TransactionHistory.Cursor cursor = account.getTransactions().cursor(-1);
+			while (cursor.next())
+				history.add(cursor.toTransaction());
+			history.force(0);
+		}
+		return 0;
+	}
+
+	// Segments are the full size from the start, on most file systems the unused part takes no space
+	@Override
+	public long size(String name) throws IOException
+	{
+		long size = Files.size(getPath(name));
+		MappedTransactionHistory history = new MappedTransactionHistory(dir, name);
+		for (int i = 0; Files.exists(history.getSegmentPath(i)); i++)
+			size += Files.size(history.getSegmentPath(i));
+		return size;
+	}
+
+	@Override
+	Path getPath(String name)
+	{
+		return dir.resolve(name + ".mapped");
+	}
+}
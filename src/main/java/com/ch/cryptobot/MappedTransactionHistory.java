@@ -0,0 +1,193 @@
+package com.ch.cryptobot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Trades as fixed-width records in memory-mapped segment files of 16384
+// trades each, <name>.mapped.0, <name>.mapped.1 and so on. Trade N is always
+// at the same place, so cursors read it straight from the page cache without
+// copying it to the heap first. New trades are written into the mapping when
+// added, but they only count once MappedAccountStore has forced them to disk
+// and written the header counting them.
+class MappedTransactionHistory extends TransactionHistory
+{
+	static final int SEGMENT_SHIFT = 14;
+	static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	// timestamp, new money, price, new balance, amount, unit price, coin, flags, then 6 unused bytes
+	static final int RECORD = 56;
+	private static final int TIMESTAMP = 0, NEW_MONEY = 8, PRICE = 16, NEW_BALANCE = 24, AMOUNT = 32,
+			UNIT_PRICE = 40, CRYPTO = 48, FLAGS = 49;
+
+	private final Path dir;
+	private final String name;
+
+	MappedTransactionHistory(Path dir, String name)
+	{
+		super(SEGMENT_SHIFT);
+		this.dir = dir;
+		this.name = name;
+	}
+
+	// Maps the segments holding the first count trades and drops any written after them
+	void recover(int count) throws IOException
+	{
+		int segments = (count + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT;
+		for (int i = 0; i < segments; i++)
+		{
+			if(!Files.exists(getSegmentPath(i)))
+				throw new IOException("Missing trade segment: " + getSegmentPath(i));
+			chunks.add(map(i, false));
+		}
+		size = count;
+
+		// No trade has a zero timestamp, so the first one past the end marks where a save that never finished stopped writing
+		boolean dropped = false;
+		int offset = count & (SEGMENT_SIZE - 1);
+		if(offset != 0)
+		{
+			Segment last = (Segment) chunks.get(segments - 1);
+			for (; offset < SEGMENT_SIZE && last.timestamp(offset) != 0; offset++)
+			{
+				last.clear(offset);
+				dropped = true;
+			}
+			if(dropped)
+				last.buffer.force();
+		}
+		for (int i = segments; Files.deleteIfExists(getSegmentPath(i)); i++)
+			dropped = true;
+
+		if(dropped)
+			System.err.println("Dropping uncommitted trades at the end of " + getSegmentPath(Math.max(0, segments - 1)));
+	}
+
+	// Writes the segments holding trades from the given one on to disk
+	void force(int from)
+	{
+		for (int i = from >>> SEGMENT_SHIFT; i < chunks.size(); i++)
+			((Segment) chunks.get(i)).buffer.force();
+	}
+
+	@Override
+	Chunk newChunk(int index)
+	{
+		return map(index, true);
+	}
+
+	Path getSegmentPath(int index)
+	{
+		return dir.resolve(name + ".mapped." + index);
+	}
+
+	private Segment map(int index, boolean fresh)
+	{
+		Path path = getSegmentPath(index);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			// A new segment may only exist from a save that never finished
+			if(fresh)
+				channel.truncate(0);
+			return new Segment(channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) RECORD * SEGMENT_SIZE));
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Couldn't map trade segment: " + path, e);
+		}
+	}
+
+	private static class Segment extends Chunk
+	{
+		final MappedByteBuffer buffer;
+
+		Segment(MappedByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		void clear(int offset)
+		{
+			for (int i = 0; i < RECORD; i += 8)
+				buffer.putLong(offset * RECORD + i, 0);
+		}
+
+		@Override
+		int capacity()
+		{
+			return SEGMENT_SIZE;
+		}
+
+		@Override
+		long estimateSize()
+		{
+			return 64;
+		}
+
+		@Override
+		void set(int offset, long timestamp, long newMoney, long price, long newBalance, long amount,
+				double unitPrice, byte crypto, byte flags)
+		{
+			int at = offset * RECORD;
+			buffer.putLong(at + NEW_MONEY, newMoney);
+			buffer.putLong(at + PRICE, price);
+			buffer.putLong(at + NEW_BALANCE, newBalance);
+			buffer.putLong(at + AMOUNT, amount);
+			buffer.putDouble(at + UNIT_PRICE, unitPrice);
+			buffer.put(at + CRYPTO, crypto);
+			buffer.put(at + FLAGS, flags);
+			buffer.putLong(at + TIMESTAMP, timestamp);
+		}
+
+		@Override
+		long timestamp(int offset)
+		{
+			return buffer.getLong(offset * RECORD + TIMESTAMP);
+		}
+
+		@Override
+		long newMoney(int offset)
+		{
+			return buffer.getLong(offset * RECORD + NEW_MONEY);
+		}
+
+		@Override
+		long price(int offset)
+		{
+			return buffer.getLong(offset * RECORD + PRICE);
+		}
+
+		@Override
+		long newBalance(int offset)
+		{
+			return buffer.getLong(offset * RECORD + NEW_BALANCE);
+		}
+
+		@Override
+		long amount(int offset)
+		{
+			return buffer.getLong(offset * RECORD + AMOUNT);
+		}
+
+		@Override
+		double unitPrice(int offset)
+		{
+			return buffer.getDouble(offset * RECORD + UNIT_PRICE);
+		}
+
+		@Override
+		byte crypto(int offset)
+		{
+			return buffer.get(offset * RECORD + CRYPTO);
+		}
+
+		@Override
+		byte flags(int offset)
+		{
+			return buffer.get(offset * RECORD + FLAGS);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.ch.cryptobot;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Cash amounts as a long count of cents, so trades don't allocate BigDecimals.
+// Written out exactly as the BigDecimal at scale 2 they replace.
+final class Money
+{
+	// Every power of ten a double holds exactly
+	private static final double[] POW10 = new double[23];
+	private static final long[] LONG_POW10 = new long[19];
+	// Doubles hold every whole number up to here exactly
+	private static final long EXACT = 1L << 53;
+
+	static
+	{
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10;
+		LONG_POW10[0] = 1;
+		for (int i = 1; i < LONG_POW10.length; i++)
+			LONG_POW10[i] = LONG_POW10[i - 1] * 10;
+	}
+
+	private Money() {}
+
+	static long parse(String str, RoundingMode mode)
+	{
+		return toCents(new BigDecimal(str), mode);
+	}
+
+	static long toCents(BigDecimal amount, RoundingMode mode)
+	{
+		return amount.setScale(2, mode).unscaledValue().longValueExact();
+	}
+
+	// What quantity units of a coin cost at unitPrice, rounded up for buys and down for sells.
+	// The price is taken as its shortest decimal, like BigDecimal.valueOf, and multiplied
+	// in 128 bits without allocating. BigDecimal is only used when that doesn't fit
+	static long cost(double unitPrice, long quantity, boolean buy)
+	{
+		if(unitPrice > 0 && quantity >= 0)
+		{
+			for (int scale = 0; scale < POW10.length; scale++)
+			{
+				double scaled = unitPrice * POW10[scale];
+				if(scaled >= EXACT)
+					break;
+
+				// Digits and power are exact doubles, so the division rounds like parsing the
+				// decimal would. Near EXACT the product can be off by one, so neighbours are tried
+				long digits = Math.round(scaled);
+				if(digits / POW10[scale] == unitPrice)
+					return cost(digits, scale, quantity, buy);
+				if(scaled >= EXACT / 4)
+				{
+					if((digits - 1) / POW10[scale] == unitPrice)
+						return cost(digits - 1, scale, quantity, buy);
+					if((digits + 1) / POW10[scale] == unitPrice)
+						return cost(digits + 1, scale, quantity, buy);
+				}
+			}
+		}
+		return toCents(BigDecimal.valueOf(unitPrice).multiply(Quantity.toBigDecimal(quantity)), buy ? RoundingMode.UP : RoundingMode.DOWN);
+	}
+
+	// digits * 10^-scale dollars for quantity units of 10^-8, in cents
+	private static long cost(long digits, int scale, long quantity, boolean buy)
+	{
+		int shift = scale + Quantity.SCALE - 2;
+		long product = digits * quantity;
+		if(Math.multiplyHigh(digits, quantity) != 0 || product < 0 || shift >= LONG_POW10.length)
+			return toCents(BigDecimal.valueOf(digits, scale).multiply(Quantity.toBigDecimal(quantity)), buy ? RoundingMode.UP : RoundingMode.DOWN);
+
+		long divisor = LONG_POW10[shift];
+		long cents = product / divisor;
+		return buy && product % divisor != 0 ? cents + 1 : cents;
+	}
+
+	static BigDecimal toBigDecimal(long cents)
+	{
+		return BigDecimal.valueOf(cents, 2);
+	}
+
+	static double toDouble(long cents)
+	{
+		return cents / 100.0;
+	}
+
+	static String toPlainString(long cents)
+	{
+		return appendTo(new StringBuilder(24), cents).toString();
+	}
+
+	static StringBuilder appendTo(StringBuilder sb, long cents)
+	{
+		if(cents < 0)
+		{
+			sb.append('-');
+			if(cents == Long.MIN_VALUE)
+				return sb.append("92233720368547758.08");
+			cents = -cents;
+		}
+		long fraction = cents % 100;
+		sb.append(cents / 100).append('.');
+		if(fraction < 10)
+			sb.append('0');
+		return sb.append(fraction);
+	}
+}
@@ -0,0 +1,452 @@
+package com.ch.cryptobot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// The in-memory price board: the latest quote of every coin, refreshed by a
+// PriceFeed or on demand from the source. A quote younger than the ttl is
+// fresh. An older one is still answered right away while a new one is fetched
+// in the background, up to maxStale, after that callers wait for the source.
+// If the source fails, or its circuit breaker is open, the last known quote is
+// answered however old it is, so quotes carry their time for callers to show.
+class PriceCache implements PriceSource
+{
+	final PriceSource source;
+	final CircuitBreaker breaker;
+	private final long ttl;
+	private final long maxStale;
+	private final AtomicReferenceArray<Quote> quotes;
+	private final Map<Crypto, CompletableFuture<Quote>> loading;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder waits = new LongAdder();
+	private final LongAdder stale = new LongAdder();
+	private final LongAdder fallbacks = new LongAdder();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder loadNanos = new LongAdder();
+
+	// Never answers stale quotes while the source works
+	PriceCache(PriceSource source, long ttl)
+	{
+		this(source, ttl, ttl, new CircuitBreaker(5, 30_000));
+	}
+
+	PriceCache(PriceSource source, long ttl, long maxStale, CircuitBreaker breaker)
+	{
+		if(ttl < 0)
+			throw new IllegalArgumentException("negative ttl: " + ttl);
+		if(maxStale < ttl)
+			throw new IllegalArgumentException("maxStale " + maxStale + " is less than the ttl " + ttl);
+
+		this.source = source;
+		this.breaker = breaker;
+		this.ttl = ttl;
+		this.maxStale = maxStale;
+		quotes = new AtomicReferenceArray<>(Crypto.values().length);
+		loading = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public double getPrice(Crypto crypto)
+	{
+		return getQuote(crypto).price;
+	}
+
+	Quote getQuote(Crypto crypto)
+	{
+		Quote quote = quotes.get(crypto.ordinal());
+		long now = System.currentTimeMillis();
+		if(quote != null && isFresh(quote, now))
+		{
+			hits.increment();
+			return quote;
+		}
+		if(quote != null && quote.getAge(now) < maxStale)
+		{
+			stale.increment();
+			refresh(crypto);
+			return quote;
+		}
+		misses.increment();
+
+		// Only one caller fetches a coin, the rest wait on its result
+		CompletableFuture<Quote> future = new CompletableFuture<>();
+		CompletableFuture<Quote> inFlight = loading.putIfAbsent(crypto, future);
+		if(inFlight != null)
+		{
+			waits.increment();
+			return await(inFlight, quote);
+		}
+
+		try
+		{
+			// Another loader may have finished between our read and our claim
+			Quote latest = quotes.get(crypto.ordinal());
+			if(latest == null || !isFresh(latest, System.currentTimeMillis()))
+				latest = load(crypto);
+
+			future.complete(latest);
+			return latest;
+		}
+		catch (RuntimeException ex)
+		{
+			future.completeExceptionally(ex);
+			return fallback(quote, ex);
+		}
+		finally
+		{
+			loading.remove(crypto, future);
+		}
+	}
+
+	@Override
+	public Map<Crypto, Double> getPrices(Collection<Crypto> cryptos)
+	{
+		Map<Crypto, Double> prices = new EnumMap<>(Crypto.class);
+		for (Map.Entry<Crypto, Quote> quote : getQuotes(cryptos).entrySet())
+			prices.put(quote.getKey(), quote.getValue().price);
+		return prices;
+	}
+
+	Map<Crypto, Quote> getQuotes(Collection<Crypto> cryptos)
+	{
+		Map<Crypto, Quote> result = new EnumMap<>(Crypto.class);
+		// Quotes too old to answer without asking the source, kept in case it fails
+		Map<Crypto, Quote> old = new EnumMap<>(Crypto.class);
+		Map<Crypto, CompletableFuture<Quote>> claimed = new EnumMap<>(Crypto.class);
+		Map<Crypto, CompletableFuture<Quote>> waiting = new EnumMap<>(Crypto.class);
+		List<Crypto> revalidate = new ArrayList<>();
+
+		long now = System.currentTimeMillis();
+		Quote quote;
+		for (Crypto crypto : cryptos)
+		{
+			quote = quotes.get(crypto.ordinal());
+			if(quote != null && isFresh(quote, now))
+			{
+				hits.increment();
+				result.put(crypto, quote);
+				continue;
+			}
+			if(quote != null && quote.getAge(now) < maxStale)
+			{
+				stale.increment();
+				result.put(crypto, quote);
+				revalidate.add(crypto);
+				continue;
+			}
+			misses.increment();
+			if(quote != null)
+				old.put(crypto, quote);
+
+			CompletableFuture<Quote> future = new CompletableFuture<>();
+			CompletableFuture<Quote> inFlight = loading.putIfAbsent(crypto, future);
+			if(inFlight != null)
+			{
+				waits.increment();
+				waiting.put(crypto, inFlight);
+			}
+			else
+				claimed.put(crypto, future);
+		}
+
+		if(!revalidate.isEmpty())
+			refreshAll(revalidate);
+
+		if(!claimed.isEmpty())
+		{
+			// Everything we claimed is fetched in one request
+			Map<Crypto, Quote> loaded;
+			try
+			{
+				loaded = loadAll(claimed.keySet());
+				settle(claimed, loaded, null);
+			}
+			catch (RuntimeException ex)
+			{
+				settle(claimed, null, ex);
+				for (Crypto crypto : claimed.keySet())
+					result.put(crypto, fallback(old.get(crypto), ex));
+				loaded = result;
+			}
+			for (Crypto crypto : claimed.keySet())
+			{
+				quote = loaded.get(crypto);
+				result.put(crypto, quote != null ? quote : fallback(old.get(crypto), new IllegalStateException("No price returned for " + crypto.symbol)));
+			}
+		}
+
+		for (Map.Entry<Crypto, CompletableFuture<Quote>> wait : waiting.entrySet())
+			result.put(wait.getKey(), await(wait.getValue(), old.get(wait.getKey())));
+
+		return result;
+	}
+
+	// A new quote fetched in the background, or the one already on its way
+	CompletableFuture<Quote> refresh(Crypto crypto)
+	{
+		return refreshAll(EnumSet.of(crypto)).get(crypto);
+	}
+
+	// Coins nobody is fetching yet are fetched together in one request
+	private Map<Crypto, CompletableFuture<Quote>> refreshAll(Collection<Crypto> cryptos)
+	{
+		Map<Crypto, CompletableFuture<Quote>> futures = new EnumMap<>(Crypto.class);
+		Map<Crypto, CompletableFuture<Quote>> claimed = new EnumMap<>(Crypto.class);
+		for (Crypto crypto : cryptos)
+		{
+			CompletableFuture<Quote> future = new CompletableFuture<>();
+			CompletableFuture<Quote> inFlight = loading.putIfAbsent(crypto, future);
+			if(inFlight == null)
+				claimed.put(crypto, future);
+			futures.put(crypto, inFlight == null ? future : inFlight);
+		}
+		if(!claimed.isEmpty())
+			loadAsync(claimed.keySet()).whenComplete((loaded, ex) -> settle(claimed, loaded, ex));
+		return futures;
+	}
+
+	// Lets go of the claims, completing each with what was loaded
+	private void settle(Map<Crypto, CompletableFuture<Quote>> claimed, Map<Crypto, Quote> loaded, Throwable ex)
+	{
+		for (Map.Entry<Crypto, CompletableFuture<Quote>> claim : claimed.entrySet())
+		{
+			loading.remove(claim.getKey(), claim.getValue());
+			Quote quote = loaded == null ? null : loaded.get(claim.getKey());
+			if(quote != null)
+				claim.getValue().complete(quote);
+			else
+				claim.getValue().completeExceptionally(ex != null ? ex : new IllegalStateException("No price returned for " + claim.getKey().symbol));
+		}
+	}
+
+	// Latest known quote regardless of age, never touches the network
+	Quote getLatest(Crypto crypto)
+	{
+		return quotes.get(crypto.ordinal());
+	}
+
+	void update(Map<Crypto, Double> prices, long timestamp)
+	{
+		for (Map.Entry<Crypto, Double> price : prices.entrySet())
+			quotes.set(price.getKey().ordinal(), new Quote(price.getValue(), timestamp));
+	}
+
+	void invalidate(Crypto crypto)
+	{
+		quotes.set(crypto.ordinal(), null);
+	}
+
+	private Quote load(Crypto crypto)
+	{
+		checkBreaker(Collections.singleton(crypto));
+		long start = System.nanoTime();
+		try
+		{
+			Quote quote = new Quote(source.getPrice(crypto), System.currentTimeMillis());
+			quotes.set(crypto.ordinal(), quote);
+			succeeded();
+			return quote;
+		}
+		catch (IOException ex)
+		{
+			failed();
+			throw new UncheckedIOException("Couldn't get price of " + crypto.symbol, ex);
+		}
+		catch (RuntimeException ex)
+		{
+			failed();
+			throw ex;
+		}
+		finally
+		{
+			loadNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	private Map<Crypto, Quote> loadAll(Collection<Crypto> cryptos)
+	{
+		checkBreaker(cryptos);
+		long start = System.nanoTime();
+		try
+		{
+			Map<Crypto, Quote> loaded = store(source.getPrices(cryptos));
+			succeeded();
+			return loaded;
+		}
+		catch (IOException ex)
+		{
+			failed();
+			throw new UncheckedIOException("Couldn't get prices of " + cryptos, ex);
+		}
+		catch (RuntimeException ex)
+		{
+			failed();
+			throw ex;
+		}
+		finally
+		{
+			loadNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	// Fails with a CompletionException around what loadAll would have thrown
+	private CompletableFuture<Map<Crypto, Quote>> loadAsync(Collection<Crypto> cryptos)
+	{
+		try
+		{
+			checkBreaker(cryptos);
+		}
+		catch (UncheckedIOException ex)
+		{
+			return CompletableFuture.failedFuture(ex);
+		}
+
+		long start = System.nanoTime();
+		CompletableFuture<Map<Crypto, Double>> request;
+		try
+		{
+			request = source.getPricesAsync(cryptos);
+		}
+		catch (RuntimeException ex)
+		{
+			request = CompletableFuture.failedFuture(ex);
+		}
+		return request.handle((prices, ex) -> {
+			loadNanos.add(System.nanoTime() - start);
+			if(ex == null)
+			{
+				Map<Crypto, Quote> loaded = store(prices);
+				succeeded();
+				return loaded;
+			}
+			failed();
+			Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+			if(cause instanceof IOException)
+				cause = new UncheckedIOException("Couldn't get prices of " + cryptos, (IOException) cause);
+			throw new CompletionException(cause);
+		});
+	}
+
+	private Map<Crypto, Quote> store(Map<Crypto, Double> prices)
+	{
+		Map<Crypto, Quote> loaded = new EnumMap<>(Crypto.class);
+		long timestamp = System.currentTimeMillis();
+		for (Map.Entry<Crypto, Double> price : prices.entrySet())
+		{
+			Quote quote = new Quote(price.getValue(), timestamp);
+			quotes.set(price.getKey().ordinal(), quote);
+			loaded.put(price.getKey(), quote);
+		}
+		return loaded;
+	}
+
+	private void checkBreaker(Collection<Crypto> cryptos)
+	{
+		if(!breaker.allow(System.currentTimeMillis()))
+			throw new UncheckedIOException(new IOException("Not asking for prices of " + cryptos + ", the source keeps failing"));
+	}
+
+	private void succeeded()
+	{
+		loads.increment();
+		breaker.success();
+	}
+
+	private void failed()
+	{
+		failures.increment();
+		breaker.failure(System.currentTimeMillis());
+	}
+
+	// The last known quote when there is one, however old
+	private Quote fallback(Quote quote, RuntimeException ex)
+	{
+		if(quote == null)
+			throw ex;
+
+		fallbacks.increment();
+		return quote;
+	}
+
+	private boolean isFresh(Quote quote, long now)
+	{
+		return quote.getAge(now) < ttl;
+	}
+
+	private Quote await(CompletableFuture<Quote> future, Quote old)
+	{
+		try
+		{
+			return future.join();
+		}
+		catch (CompletionException ex)
+		{
+			RuntimeException cause = ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+			return fallback(old, cause);
+		}
+	}
+
+	long getTtl()
+	{
+		return ttl;
+	}
+
+	long getHits()
+	{
+		return hits.sum();
+	}
+
+	long getMisses()
+	{
+		return misses.sum();
+	}
+
+	long getWaits()
+	{
+		return waits.sum();
+	}
+
+	long getStale()
+	{
+		return stale.sum();
+	}
+
+	long getFallbacks()
+	{
+		return fallbacks.sum();
+	}
+
+	long getLoads()
+	{
+		return loads.sum();
+	}
+
+	long getFailures()
+	{
+		return failures.sum();
+	}
+
+	double getAverageLoadMillis()
+	{
+		long count = loads.sum() + failures.sum();
+		return count == 0 ? 0 : loadNanos.sum() / 1e6 / count;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "PriceCache{source=" + source + ", ttl=" + ttl + "ms, maxStale=" + maxStale + "ms, hits=" + getHits() +
+				", misses=" + getMisses() + ", waits=" + getWaits() + ", stale=" + getStale() + ", fallbacks=" + getFallbacks() +
+				", loads=" + getLoads() + ", failures=" + getFailures() +
+				", avgLoad=" + String.format("%.1f", getAverageLoadMillis()) + "ms, " + breaker + "}";
+	}
+}
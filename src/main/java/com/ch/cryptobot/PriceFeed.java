@@ -0,0 +1,69 @@
+package com.ch.cryptobot;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Keeps the price board warm in the background so commands read prices from
+// memory instead of waiting on the network.
+class PriceFeed
+{
+	private final PriceSource source;
+	private final PriceCache board;
+	private final Collection<Crypto> cryptos;
+	private final long period;
+	private final ScheduledExecutorService service;
+	private final AtomicBoolean polling;
+
+	PriceFeed(PriceSource source, PriceCache board, long period)
+	{
+		this.source = source;
+		this.board = board;
+		this.period = period;
+		cryptos = EnumSet.copyOf(Arrays.asList(Crypto.values()));
+		polling = new AtomicBoolean();
+		service = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "price-feed");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	void start()
+	{
+		service.scheduleWithFixedDelay(this::poll, 0, period, TimeUnit.MILLISECONDS);
+		System.out.println("Price feed polling " + source + " every " + period + "ms");
+	}
+
+	// Doesn't wait for the answer, and a slow source isn't asked again until it has answered
+	void poll()
+	{
+		if(!polling.compareAndSet(false, true))
+			return;
+
+		try
+		{
+			source.getPricesAsync(cryptos).whenComplete((prices, ex) -> {
+				polling.set(false);
+				if(ex == null)
+					board.update(prices, System.currentTimeMillis());
+				else
+					System.err.println("Price feed couldn't poll " + source + ": " + ex);
+			});
+		}
+		catch (RuntimeException e)
+		{
+			polling.set(false);
+			System.err.println("Price feed couldn't poll " + source + ": " + e);
+		}
+	}
+
+	void stop()
+	{
+		service.shutdown();
+	}
+}
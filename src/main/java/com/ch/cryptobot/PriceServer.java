@@ -0,0 +1,225 @@
+package com.ch.cryptobot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// A local stand-in for the CryptoCompare price API, answering /data/price and
+// /data/pricemulti with steady made up prices, to run the bot or measure the
+// HTTP client offline:
+//   java -cp CryptoBot.jar com.ch.cryptobot.PriceServer [port] [delay ms] [error rate] [slow rate] [slow ms]
+// then start the bot with -Dcryptobot.price.url=http://localhost:<port>/data
+// It counts requests and the client connections they came in on, so how well
+// connections are reused can be read off. To see how the bot copes with a bad
+// day it can answer late, by a delay plus up to as much again at random, make
+// a fraction of requests slower still for a long tail, and fail a fraction
+// with a 500.
+public class PriceServer
+{
+	static
+	{
+		// Otherwise small responses sit out the client's delayed ack, about 40ms each on Linux
+		if(System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private static final FixedPrices PRICES = new FixedPrices();
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final LongAdder requests;
+	private final Set<SocketAddress> connections;
+	private final LongAdder errors;
+	private volatile long delay;
+	private volatile double errorRate;
+	private volatile double slowRate;
+	private volatile long slowDelay;
+
+	PriceServer(int port) throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		executor = Executors.newFixedThreadPool(8, r -> {
+			Thread thread = new Thread(r, "price-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		requests = new LongAdder();
+		connections = ConcurrentHashMap.newKeySet();
+		errors = new LongAdder();
+
+		server.createContext("/data/price", this::price);
+		server.createContext("/data/pricemulti", this::priceMulti);
+		server.setExecutor(executor);
+	}
+
+	void start()
+	{
+		server.start();
+	}
+
+	void stop()
+	{
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	String getUrl()
+	{
+		return "http://localhost:" + server.getAddress().getPort() + "/data";
+	}
+
+	long getRequests()
+	{
+		return requests.sum();
+	}
+
+	long getErrors()
+	{
+		return errors.sum();
+	}
+
+	// Answers take from delay to twice that
+	void setDelay(long millis)
+	{
+		if(millis < 0)
+			throw new IllegalArgumentException("negative delay: " + millis);
+		delay = millis;
+	}
+
+	// That fraction of requests takes millis longer on top of the delay
+	void setSlow(double rate, long millis)
+	{
+		if(!(rate >= 0 && rate <= 1))
+			throw new IllegalArgumentException("slow rate must be from 0 to 1: " + rate);
+		if(millis < 0)
+			throw new IllegalArgumentException("negative delay: " + millis);
+		slowDelay = millis;
+		slowRate = rate;
+	}
+
+	// 0 never fails, 1 always does
+	void setErrorRate(double rate)
+	{
+		if(!(rate >= 0 && rate <= 1))
+			throw new IllegalArgumentException("error rate must be from 0 to 1: " + rate);
+		errorRate = rate;
+	}
+
+	// Every connection keeps the same client port, so distinct ones are connections
+	long getConnections()
+	{
+		return connections.size();
+	}
+
+	private void price(HttpExchange exchange) throws IOException
+	{
+		if(inject(exchange))
+			return;
+		Crypto crypto = CryptoIndex.find(query(exchange, "fsym"));
+		if(crypto == null)
+		{
+			respond(exchange, 200, "{\"Response\":\"Error\",\"Message\":\"There is no data for the symbol\"}");
+			return;
+		}
+		respond(exchange, 200, "{\"USD\":" + PRICES.getPrice(crypto) + "}");
+	}
+
+	private void priceMulti(HttpExchange exchange) throws IOException
+	{
+		if(inject(exchange))
+			return;
+		StringBuilder sb = new StringBuilder("{");
+		for (String symbol : query(exchange, "fsyms").split(","))
+		{
+			Crypto crypto = CryptoIndex.find(symbol);
+			if(crypto == null)
+				continue;
+			if(sb.length() > 1)
+				sb.append(',');
+			sb.append('"').append(crypto.symbol).append("\":{\"USD\":").append(PRICES.getPrice(crypto)).append('}');
+		}
+		respond(exchange, 200, sb.append('}').toString());
+	}
+
+	// Counts the request then delays or fails it as set, returns whether it failed
+	private boolean inject(HttpExchange exchange) throws IOException
+	{
+		requests.increment();
+		connections.add(exchange.getRemoteAddress());
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long delay = this.delay;
+		if(delay > 0)
+			delay += random.nextLong(delay + 1);
+		if(slowRate > 0 && random.nextDouble() < slowRate)
+			delay += slowDelay;
+		if(delay > 0)
+		{
+			try
+			{
+				Thread.sleep(delay);
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(errorRate > 0 && random.nextDouble() < errorRate)
+		{
+			errors.increment();
+			respond(exchange, 500, "{\"Response\":\"Error\",\"Message\":\"Injected failure\"}");
+			return true;
+		}
+		return false;
+	}
+
+	private static String query(HttpExchange exchange, String name)
+	{
+		String query = exchange.getRequestURI().getQuery();
+		if(query != null)
+		{
+			for (String param : query.split("&"))
+			{
+				if(param.startsWith(name + "="))
+					return param.substring(name.length() + 1);
+			}
+		}
+		return "";
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException
+	{
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			out.write(bytes);
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		PriceServer server = new PriceServer(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+		if(args.length > 1)
+			server.setDelay(Long.parseLong(args[1]));
+		if(args.length > 2)
+			server.setErrorRate(Double.parseDouble(args[2]));
+		if(args.length > 4)
+			server.setSlow(Double.parseDouble(args[3]), Long.parseLong(args[4]));
+		server.start();
+		System.out.println("Serving prices at " + server.getUrl());
+	}
+}
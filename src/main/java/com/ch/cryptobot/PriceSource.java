@@ -0,0 +1,34 @@
+package com.ch.cryptobot;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+interface PriceSource
+{
+	double getPrice(Crypto crypto) throws IOException;
+
+	default Map<Crypto, Double> getPrices(Collection<Crypto> cryptos) throws IOException
+	{
+		Map<Crypto, Double> prices = new EnumMap<>(Crypto.class);
+		for (Crypto crypto : cryptos)
+			prices.put(crypto, getPrice(crypto));
+		return prices;
+	}
+
+	// Completes with the prices or fails with the IOException. Sources without
+	// their own async requests answer on the caller's thread
+	default CompletableFuture<Map<Crypto, Double>> getPricesAsync(Collection<Crypto> cryptos)
+	{
+		try
+		{
+			return CompletableFuture.completedFuture(getPrices(cryptos));
+		}
+		catch (IOException ex)
+		{
+			return CompletableFuture.failedFuture(ex);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.ch.cryptobot;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Coin amounts as a long count of 1e-8 units (a satoshi for bitcoin).
+// Written out like the stripped BigDecimal they replace, "10000" or "0.5".
+final class Quantity
+{
+	static final int SCALE = 8;
+	static final long ONE = 100_000_000L;
+
+	private Quantity() {}
+
+	// Throws NumberFormatException for anything finer than SCALE or too large
+	static long parse(String str)
+	{
+		BigDecimal amount = new BigDecimal(str);
+		try
+		{
+			return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+		}
+		catch (ArithmeticException ex)
+		{
+			throw new NumberFormatException("Not a quantity: " + str);
+		}
+	}
+
+	// A positive number parse turned down only for having too many decimal places
+	static boolean isTooFine(String str)
+	{
+		try
+		{
+			BigDecimal amount = new BigDecimal(str);
+			return amount.signum() > 0 && amount.stripTrailingZeros().scale() > SCALE;
+		}
+		catch (NumberFormatException ex)
+		{
+			return false;
+		}
+	}
+
+	// For stored values, which before fixed point could be finer than SCALE.
+	// Those are rounded to the nearest unit rather than cut off, so a balance
+	// like 0.999999999 loads as 1 and not 0.99999999
+	static long parseStored(String str)
+	{
+		return new BigDecimal(str).setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	static BigDecimal toBigDecimal(long units)
+	{
+		return BigDecimal.valueOf(units, SCALE);
+	}
+
+	static String toPlainString(long units)
+	{
+		return appendTo(new StringBuilder(24), units).toString();
+	}
+
+	static StringBuilder appendTo(StringBuilder sb, long units)
+	{
+		if(units < 0)
+		{
+			sb.append('-');
+			if(units == Long.MIN_VALUE)
+				return sb.append("92233720368.54775808");
+			units = -units;
+		}
+		sb.append(units / ONE);
+
+		long fraction = units % ONE;
+		if(fraction != 0)
+		{
+			int digits = SCALE;
+			while (fraction % 10 == 0)
+			{
+				fraction /= 10;
+				digits--;
+			}
+			sb.append('.');
+			for (long pad = fraction * 10; pad < pow10(digits); pad *= 10)
+				sb.append('0');
+			sb.append(fraction);
+		}
+		return sb;
+	}
+
+	private static long pow10(int digits)
+	{
+		long value = 1;
+		for (int i = 0; i < digits; i++)
+			value *= 10;
+		return value;
+	}
+}
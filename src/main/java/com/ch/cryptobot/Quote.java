@@ -0,0 +1,24 @@
+package com.ch.cryptobot;
+
+class Quote
+{
+	final double price;
+	final long timestamp;
+
+	Quote(double price, long timestamp)
+	{
+		this.price = price;
+		this.timestamp = timestamp;
+	}
+
+	long getAge(long now)
+	{
+		return now - timestamp;
+	}
+
+	@Override
+	public String toString()
+	{
+		return price + " @ " + timestamp;
+	}
+}
@@ -0,0 +1,225 @@
+package com.ch.cryptobot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+// Runs a recorded command file through a headless Engine, no Discord needed:
+//   java -cp CryptoBot.jar com.ch.cryptobot.ReplayDriver <commands file> [rate per second] [accounts] [requests]
+// Each line is a message as typed, like "!buy 100 doge", sent in the channel of the
+// next of the synthetic accounts in turn, or in the main channel when it starts
+// with "main:". Blank lines and lines starting with '#' are skipped. The file is
+// replayed until the given number of requests is sent, once through by default.
+// Requests go out on a fixed schedule whether or not earlier ones are done, and
+// latency counts from when a request was due, so a backed up engine shows up in
+// the percentiles instead of slowing the sender down.
+// Prices come from cryptobot.price.file when it's set, otherwise they're fixed,
+// and accounts are made fresh in a temporary directory that's deleted afterwards.
+public class ReplayDriver
+{
+	static final long STARTING_CASH = 1_000_000_00L;
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		if(args.length < 1 || args.length > 4)
+		{
+			System.err.println("Usage: ReplayDriver <commands file> [rate per second] [accounts] [requests]");
+			System.exit(1);
+		}
+		List<String> lines = new ArrayList<>();
+		for (String line : Files.readAllLines(Paths.get(args[0])))
+		{
+			line = line.trim();
+			if(!line.isEmpty() && !line.startsWith("#"))
+				lines.add(line);
+		}
+		if(lines.isEmpty())
+		{
+			System.err.println("No commands in " + args[0]);
+			System.exit(1);
+		}
+		double rate = args.length > 1 ? Double.parseDouble(args[1]) : 1000;
+		int accountCount = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		long requests = args.length > 3 ? Long.parseLong(args[3]) : lines.size();
+
+		// Thousands of commands a second would spend most of their time printing
+		if(System.getProperty("cryptobot.commands.log") == null)
+			System.setProperty("cryptobot.commands.log", "false");
+
+		String file = System.getProperty("cryptobot.price.file");
+		PriceSource source = file != null ? new FilePriceSource(Paths.get(file)) : new FixedPrices();
+
+		Path dir = Files.createTempDirectory("cryptobot-replay");
+		LocalGateway gateway = new LocalGateway();
+		Engine engine = null;
+		try
+		{
+			engine = new Engine(gateway, dir, source);
+			replay(engine, gateway, lines, rate, accountCount, requests);
+		}
+		finally
+		{
+			if(engine != null)
+				engine.shutdown();
+			try (Stream<Path> files = Files.walk(dir))
+			{
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	static void replay(Engine engine, LocalGateway gateway, List<String> lines, double rate, int accountCount, long requests) throws InterruptedException
+	{
+		String[] names = new String[accountCount];
+		long[] owners = new long[accountCount];
+		for (int i = 0; i < accountCount; i++)
+		{
+			names[i] = "replay-" + i;
+			owners[i] = 1000 + i;
+			engine.accounts.addAccount(names[i], owners[i], gateway.createChannel(names[i]), account -> account.setMoney(STARTING_CASH));
+		}
+		engine.accounts.save();
+		System.out.println("Created " + accountCount + " accounts in " + engine.accDir);
+
+		LatencyHistogram latency = new LatencyHistogram();
+		AtomicLong completed = new AtomicLong();
+		long rejected = 0;
+		long period = (long) (1e9 / rate);
+		long start = System.nanoTime();
+		int next = 0;
+		for (long i = 0; i < requests; i++)
+		{
+			long due = start + i * period;
+			long wait;
+			while ((wait = due - System.nanoTime()) > 0)
+				LockSupport.parkNanos(wait);
+
+			String text = lines.get((int) (i % lines.size()));
+			Request request;
+			if(text.startsWith("main:"))
+			{
+				text = text.substring(5).trim();
+				request = new LocalRequest(i + 1, owners[0], "main", due, latency, completed);
+			}
+			else
+			{
+				request = new LocalRequest(i + 1, owners[next], names[next], due, latency, completed);
+				next = (next + 1) % accountCount;
+			}
+
+			CommandLine line = engine.parse(text, text.startsWith("!") ? 1 : 0);
+			if(line.isEmpty())
+				completed.incrementAndGet();
+			else if(!engine.submit(request, line))
+				rejected++;
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+		while (completed.get() + rejected < requests && System.nanoTime() < deadline)
+			Thread.sleep(10);
+		long elapsed = System.nanoTime() - start;
+
+		long done = completed.get();
+		System.out.printf("%d requests at %.0f/s to %d accounts, %d rejected, %d unfinished%n", requests, rate, accountCount, rejected, requests - rejected - done);
+		System.out.printf("throughput: %.1f requests/s over %.2fs%n", done / (elapsed / 1e9), elapsed / 1e9);
+		System.out.printf("latency: p50 %s, p90 %s, p99 %s, p999 %s, max %s%n",
+				Stats.duration(latency.getPercentile(0.5)), Stats.duration(latency.getPercentile(0.9)),
+				Stats.duration(latency.getPercentile(0.99)), Stats.duration(latency.getPercentile(0.999)),
+				Stats.duration(latency.getMaxValue()));
+		System.out.println(engine.stats.render());
+	}
+
+	// Replies are delivered as soon as they're made, latency is from when it was due until the command ran
+	static class LocalRequest implements Request
+	{
+		private static final CompletableFuture<Void> DELIVERED = CompletableFuture.completedFuture(null);
+
+		private final long id, userID, due;
+		private final String channel;
+		private final LatencyHistogram latency;
+		private final AtomicLong completed;
+
+		LocalRequest(long id, long userID, String channel, long due, LatencyHistogram latency, AtomicLong completed)
+		{
+			this.id = id;
+			this.userID = userID;
+			this.channel = channel;
+			this.due = due;
+			this.latency = latency;
+			this.completed = completed;
+		}
+
+		@Override
+		public long getId()
+		{
+			return id;
+		}
+
+		@Override
+		public long getUserId()
+		{
+			return userID;
+		}
+
+		@Override
+		public String getChannel()
+		{
+			return channel;
+		}
+
+		@Override
+		public boolean isAdmin()
+		{
+			return true;
+		}
+
+		@Override
+		public CompletableFuture<?> reply(CharSequence text)
+		{
+			return DELIVERED;
+		}
+
+		@Override
+		public CompletableFuture<?> send(CharSequence text)
+		{
+			return DELIVERED;
+		}
+
+		@Override
+		public void done()
+		{
+			latency.recordSince(due);
+			completed.incrementAndGet();
+		}
+	}
+
+	// Channels are only numbers, and messages to them go nowhere
+	static class LocalGateway implements Gateway
+	{
+		private final AtomicLong channels = new AtomicLong(1);
+
+		@Override
+		public long createChannel(String name)
+		{
+			return channels.getAndIncrement();
+		}
+
+		@Override
+		public void deleteChannel(long channelID) {}
+
+		@Override
+		public void send(long channelID, CharSequence text) {}
+
+		@Override
+		public void reply(long channelID, long messageID, CharSequence text) {}
+	}
+}
@@ -0,0 +1,28 @@
+package com.ch.cryptobot;
+
+import java.util.concurrent.CompletableFuture;
+
+// A command as it came in, from Discord or anything else that can answer it.
+// The futures complete once a message is delivered, or fail if it couldn't be.
+interface Request
+{
+	// Scheduled trades reply to this later on, through the Gateway
+	long getId();
+
+	long getUserId();
+
+	// Name of the channel it was sent in, "main" outside of account channels
+	String getChannel();
+
+	// Whether the transport trusts this user with admin commands
+	boolean isAdmin();
+
+	CompletableFuture<?> reply(CharSequence text);
+
+	// A message to the same channel that doesn't reply, like the rest of a long answer
+	CompletableFuture<?> send(CharSequence text);
+
+	// The command has run, replies may still be on their way. Not called
+	// for requests Engine.submit turned away
+	default void done() {}
+}
@@ -0,0 +1,58 @@
+package com.ch.cryptobot;
+
+import java.util.Objects;
+
+class ScheduledTransaction
+{
+	final long id;
+	final String accountName;
+	final Crypto crypto;
+	// Coin units, see Quantity
+	final long amount;
+	final boolean buy;
+	final long msgID;
+	// Minutes between runs, 0 for transactions that only run once
+	final long period;
+	volatile long nextFire;
+
+	ScheduledTransaction(long id, String accountName, Crypto crypto, long amount, boolean buy, long msgID, long period, long nextFire)
+	{
+		this.id = id;
+		this.accountName = accountName;
+		this.crypto = crypto;
+		this.amount = amount;
+		this.buy = buy;
+		this.msgID = msgID;
+		this.period = period;
+		this.nextFire = nextFire;
+	}
+
+	// Parses the fields after the id of a line written by toRecord
+	ScheduledTransaction(long id, String[] fields, int offset)
+	{
+		this.id = id;
+		accountName = fields[offset];
+		crypto = Objects.requireNonNull(Crypto.bySymbol(fields[offset + 1]), fields[offset + 1]);
+		amount = Quantity.parseStored(fields[offset + 2]);
+		buy = fields[offset + 3].equals("1");
+		msgID = Long.parseLong(fields[offset + 4]);
+		period = Long.parseLong(fields[offset + 5]);
+		nextFire = Long.parseLong(fields[offset + 6]);
+	}
+
+	boolean isRepeating()
+	{
+		return period > 0;
+	}
+
+	long getPeriodMillis()
+	{
+		return period * 60_000L;
+	}
+
+	String toRecord()
+	{
+		return id + " " + accountName + " " + crypto.symbol + " " + Quantity.toPlainString(amount) + " " +
+				(buy ? '1' : '0') + " " + msgID + " " + period + " " + nextFire;
+	}
+}
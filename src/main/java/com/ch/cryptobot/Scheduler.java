@@ -0,0 +1,227 @@
+package com.ch.cryptobot;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs tasks at a given time with minute granularity. A single ticker thread
+// only advances the timing wheel, due tasks are handed to the workers.
+// Priced tasks due in the same tick are grouped by coin and run against one
+// price snapshot, fetched in a single request for every coin in the tick.
+class Scheduler
+{
+	private final TimingWheel<Task> wheel;
+	private final CommandExecutor workers;
+	private final PriceCache prices;
+	private final ScheduledExecutorService ticker;
+
+	private final LongAdder fired = new LongAdder();
+	private final LongAdder started = new LongAdder();
+	private final LongAdder lagMillis = new LongAdder();
+	private final AtomicLong maxLagMillis = new AtomicLong();
+	private final LongAdder retried = new LongAdder();
+	private final LongAdder priced = new LongAdder();
+	private final LongAdder snapshots = new LongAdder();
+
+	Scheduler(CommandExecutor workers, PriceCache prices)
+	{
+		this.workers = workers;
+		this.prices = prices;
+		wheel = new TimingWheel<>(System.currentTimeMillis());
+		ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	void start()
+	{
+		// Tick just after every minute boundary
+		long now = System.currentTimeMillis();
+		long delay = TimingWheel.MINUTE - now % TimingWheel.MINUTE + 50;
+		ticker.scheduleAtFixedRate(this::tick, delay, TimingWheel.MINUTE, TimeUnit.MILLISECONDS);
+	}
+
+	void schedule(Runnable runnable, long time)
+	{
+		Task task = new Task(runnable, time);
+		boolean added;
+		synchronized (wheel)
+		{
+			added = wheel.add(task, time);
+		}
+		if(!added)
+			submit(task, System.currentTimeMillis());
+	}
+
+	void shutdown()
+	{
+		ticker.shutdown();
+		workers.shutdown();
+	}
+
+	private void tick()
+	{
+		try
+		{
+			long now = System.currentTimeMillis();
+			List<Task> due;
+			synchronized (wheel)
+			{
+				due = wheel.advance(now);
+			}
+			Map<Crypto, List<Task>> byCrypto = new EnumMap<>(Crypto.class);
+			for (Task task : due)
+			{
+				if(task.runnable instanceof PricedTask)
+					byCrypto.computeIfAbsent(((PricedTask) task.runnable).getCrypto(), k -> new ArrayList<>()).add(task);
+				else
+					submit(task, now);
+			}
+			if(!byCrypto.isEmpty())
+				submitPriced(byCrypto, now);
+		}
+		catch (RuntimeException ex)
+		{
+			// Never let the ticker die
+			ex.printStackTrace();
+		}
+	}
+
+	private void submitPriced(Map<Crypto, List<Task>> byCrypto, long now)
+	{
+		boolean submitted = workers.submit(() -> {
+			Map<Crypto, Quote> snapshot;
+			try
+			{
+				snapshot = prices.getQuotes(byCrypto.keySet());
+				snapshots.increment();
+			}
+			catch (Exception ex)
+			{
+				// Let every task try on its own instead
+				System.err.println("Couldn't fetch prices for scheduled tasks: " + ex);
+				snapshot = new EnumMap<>(Crypto.class);
+			}
+
+			for (Map.Entry<Crypto, List<Task>> group : byCrypto.entrySet())
+			{
+				Quote quote = snapshot.get(group.getKey());
+				for (Task task : group.getValue())
+				{
+					PricedTask pricedTask = (PricedTask) task.runnable;
+					submit(quote == null ? task : new Task(() -> pricedTask.run(quote), task.time), now);
+					priced.increment();
+				}
+			}
+		});
+
+		if(!submitted)
+		{
+			for (List<Task> group : byCrypto.values())
+			{
+				for (Task task : group)
+					submit(task, now);
+			}
+		}
+	}
+
+	private void submit(Task task, long now)
+	{
+		// Lag is taken when a worker starts it, so time queued behind other work counts
+		Runnable timed = () -> {
+			long lag = Math.max(0, System.currentTimeMillis() - task.time);
+			started.increment();
+			lagMillis.add(lag);
+			maxLagMillis.accumulateAndGet(lag, Math::max);
+			task.runnable.run();
+		};
+		if(workers.submit(timed))
+			fired.increment();
+		else
+		{
+			// Workers are full, try again next minute
+			retried.increment();
+			synchronized (wheel)
+			{
+				wheel.add(task, now + TimingWheel.MINUTE);
+			}
+		}
+	}
+
+	int getPending()
+	{
+		synchronized (wheel)
+		{
+			return wheel.size();
+		}
+	}
+
+	long getFired()
+	{
+		return fired.sum();
+	}
+
+	long getRetried()
+	{
+		return retried.sum();
+	}
+
+	long getPriced()
+	{
+		return priced.sum();
+	}
+
+	long getSnapshots()
+	{
+		return snapshots.sum();
+	}
+
+	double getAverageLagMillis()
+	{
+		long count = started.sum();
+		return count == 0 ? 0 : (double) lagMillis.sum() / count;
+	}
+
+	long getMaxLagMillis()
+	{
+		return maxLagMillis.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Scheduler{pending=" + getPending() + ", fired=" + getFired() + ", retried=" + getRetried() +
+				", priced=" + getPriced() + ", snapshots=" + getSnapshots() +
+				", avgLag=" + String.format("%.0f", getAverageLagMillis()) + "ms, maxLag=" + getMaxLagMillis() +
+				"ms, workers=" + workers + "}";
+	}
+
+	// A task that needs the price of a coin. run() fetches its own price,
+	// run(Quote) is used when the scheduler already has one for this tick
+	interface PricedTask extends Runnable
+	{
+		Crypto getCrypto();
+
+		void run(Quote quote);
+	}
+
+	private static class Task
+	{
+		final Runnable runnable;
+		final long time;
+
+		Task(Runnable runnable, long time)
+		{
+			this.runnable = runnable;
+			this.time = time;
+		}
+	}
+}
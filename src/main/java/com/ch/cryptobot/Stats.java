@@ -0,0 +1,256 @@
+package com.ch.cryptobot;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Where the time goes: a latency histogram per command and per stage of a
+// command, and counters of errors and price requests. Histograms are all made
+// before the bot takes commands, so recording is only ever a lookup and an add.
+// Shown by !stats and registered as MBeans under com.ch.cryptobot.
+class Stats implements StatsMXBean
+{
+	static final String DOMAIN = "com.ch.cryptobot";
+
+	private final PriceCache prices;
+	// Null unless prices come from several sources
+	private final HedgedPriceSource hedged;
+	private final Map<String, LatencyHistogram> commands;
+	private final Map<Stage, LatencyHistogram> stages;
+	private final LongAdder errors;
+	private final List<ObjectName> registered;
+
+	Stats(PriceCache prices)
+	{
+		this.prices = prices;
+		hedged = prices.source instanceof HedgedPriceSource ? (HedgedPriceSource) prices.source : null;
+		commands = new TreeMap<>();
+		stages = new EnumMap<>(Stage.class);
+		for (Stage stage : Stage.values())
+			stages.put(stage, new LatencyHistogram());
+		errors = new LongAdder();
+		registered = new ArrayList<>();
+	}
+
+	// Only while setting up, the map isn't safe to change once commands run
+	LatencyHistogram command(String name)
+	{
+		return commands.computeIfAbsent(name, key -> new LatencyHistogram());
+	}
+
+	LatencyHistogram stage(Stage stage)
+	{
+		return stages.get(stage);
+	}
+
+	void record(Stage stage, long start)
+	{
+		stages.get(stage).recordSince(start);
+	}
+
+	void error()
+	{
+		errors.increment();
+	}
+
+	@Override
+	public long getErrors()
+	{
+		return errors.sum();
+	}
+
+	@Override
+	public long getPriceCalls()
+	{
+		return prices.getLoads() + prices.getFailures();
+	}
+
+	@Override
+	public long getPriceFailures()
+	{
+		return prices.getFailures();
+	}
+
+	@Override
+	public double getAveragePriceMillis()
+	{
+		return prices.getAverageLoadMillis();
+	}
+
+	@Override
+	public long getPriceCacheHits()
+	{
+		return prices.getHits();
+	}
+
+	@Override
+	public long getPriceCacheMisses()
+	{
+		return prices.getMisses();
+	}
+
+	// Stale quotes answered while a new one was fetched
+	@Override
+	public long getPriceCacheStale()
+	{
+		return prices.getStale();
+	}
+
+	// Old quotes answered because the source failed or its breaker was open
+	@Override
+	public long getPriceFallbacks()
+	{
+		return prices.getFallbacks();
+	}
+
+	@Override
+	public String getPriceCircuit()
+	{
+		return prices.breaker.getState().toString();
+	}
+
+	@Override
+	public long getPriceCircuitTrips()
+	{
+		return prices.breaker.getTrips();
+	}
+
+	// Share of price requests that were sent to a second source too
+	@Override
+	public double getPriceHedgeRate()
+	{
+		return hedged == null ? 0 : hedged.getHedgeRate();
+	}
+
+	// What a price request took, hedged or not
+	@Override
+	public double getPriceP99Millis()
+	{
+		return hedged == null ? 0 : hedged.latency.getPercentile(0.99) / 1e6;
+	}
+
+	// What it would have taken from the first source alone
+	@Override
+	public double getPriceUnhedgedP99Millis()
+	{
+		return hedged == null ? 0 : hedged.primaryLatency.getPercentile(0.99) / 1e6;
+	}
+
+	// A table of everything that has run at least once, for !stats
+	String render()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("```\n");
+		sb.append(String.format("%-10s %8s %9s %9s %9s %9s%n", "command", "count", "p50", "p99", "p999", "max"));
+		for (Map.Entry<String, LatencyHistogram> entry : commands.entrySet())
+			row(sb, entry.getKey(), entry.getValue());
+
+		sb.append(String.format("%n%-10s %8s %9s %9s %9s %9s%n", "stage", "count", "p50", "p99", "p999", "max"));
+		for (Map.Entry<Stage, LatencyHistogram> entry : stages.entrySet())
+			row(sb, entry.getKey().toString(), entry.getValue());
+
+		sb.append("\nerrors: ").append(getErrors()).append('\n');
+		sb.append("price calls: ").append(getPriceCalls()).append(" (").append(getPriceFailures()).append(" failed, ")
+				.append(String.format("%.1f", getAveragePriceMillis())).append("ms average)\n");
+		sb.append("price cache: ").append(getPriceCacheHits()).append(" hits, ").append(getPriceCacheMisses()).append(" misses, ")
+				.append(getPriceCacheStale()).append(" stale, ").append(getPriceFallbacks()).append(" fallbacks\n");
+		sb.append("price circuit: ").append(getPriceCircuit()).append(" (").append(getPriceCircuitTrips()).append(" trips, ")
+				.append(prices.breaker.getRejected()).append(" calls turned away)\n");
+		if(hedged != null)
+		{
+			sb.append("price hedging: ");
+			if(hedged.isMedian())
+				sb.append("median of a majority");
+			else
+				sb.append(String.format("%.1f", getPriceHedgeRate() * 100)).append("% hedged (").append(hedged.getHedgeWins()).append(" won)");
+			sb.append(", p99 ").append(duration(hedged.latency.getPercentile(0.99)))
+					.append(" vs ").append(duration(hedged.primaryLatency.getPercentile(0.99))).append(" from the first source\n");
+		}
+		sb.append("```");
+		return sb.toString();
+	}
+
+	private static void row(StringBuilder sb, String name, LatencyHistogram histogram)
+	{
+		long count = histogram.getCountValue();
+		if(count == 0)
+			return;
+
+		sb.append(String.format("%-10s %8d %9s %9s %9s %9s%n", name, count,
+				duration(histogram.getPercentile(0.5)), duration(histogram.getPercentile(0.99)),
+				duration(histogram.getPercentile(0.999)), duration(histogram.getMaxValue())));
+	}
+
+	// Like "850us", "12.4ms" or "3.2s"
+	static String duration(long nanos)
+	{
+		if(nanos < 1_000_000)
+			return nanos / 1000 + "us";
+		if(nanos < 1_000_000_000)
+			return String.format("%.1fms", nanos / 1e6);
+		return String.format("%.1fs", nanos / 1e9);
+	}
+
+	void register()
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try
+		{
+			register(server, new ObjectName(DOMAIN, "type", "Stats"), new StandardMBean(this, StatsMXBean.class, true));
+			for (Map.Entry<String, LatencyHistogram> entry : commands.entrySet())
+				register(server, name("Command", entry.getKey()), new StandardMBean(entry.getValue(), LatencyMXBean.class, true));
+			for (Map.Entry<Stage, LatencyHistogram> entry : stages.entrySet())
+				register(server, name("Stage", entry.getKey().toString()), new StandardMBean(entry.getValue(), LatencyMXBean.class, true));
+		}
+		catch (JMException ex)
+		{
+			System.err.println("Couldn't register stats with JMX: " + ex);
+		}
+	}
+
+	void unregister()
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName name : registered)
+		{
+			try
+			{
+				server.unregisterMBean(name);
+			}
+			catch (JMException ex)
+			{
+				System.err.println("Couldn't unregister " + name + ": " + ex);
+			}
+		}
+		registered.clear();
+	}
+
+	private void register(MBeanServer server, ObjectName name, Object bean) throws JMException
+	{
+		server.registerMBean(bean, name);
+		registered.add(name);
+	}
+
+	private static ObjectName name(String type, String name) throws JMException
+	{
+		Hashtable<String, String> properties = new Hashtable<>();
+		properties.put("type", type);
+		properties.put("name", name);
+		return new ObjectName(DOMAIN, properties);
+	}
+
+	enum Stage
+	{
+		PARSE, ACCOUNT, PRICE, COMPUTE, SAVE, REPLY;
+
+		@Override
+		public String toString()
+		{
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.ch.cryptobot;
+
+// The bot's counters over JMX, see Stats
+public interface StatsMXBean
+{
+	long getErrors();
+
+	long getPriceCalls();
+
+	long getPriceFailures();
+
+	double getAveragePriceMillis();
+
+	long getPriceCacheHits();
+
+	long getPriceCacheMisses();
+
+	long getPriceCacheStale();
+
+	long getPriceFallbacks();
+
+	String getPriceCircuit();
+
+	long getPriceCircuitTrips();
+
+	double getPriceHedgeRate();
+
+	double getPriceP99Millis();
+
+	double getPriceUnhedgedP99Millis();
+}
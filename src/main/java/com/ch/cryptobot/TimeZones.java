@@ -0,0 +1,75 @@
+package com.ch.cryptobot;
+
+import com.hk.json.Json;
+import com.hk.json.JsonObject;
+import com.hk.json.JsonValue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The zone each user wants times shown in, set with !timezone and kept in
+// timezones.json as user id -> zone id
+class TimeZones
+{
+	final Path path;
+	final ZoneId defaultZone;
+	private final Map<Long, ZoneId> zones;
+
+	TimeZones(Path path, ZoneId defaultZone) throws IOException
+	{
+		this.path = path;
+		this.defaultZone = defaultZone;
+		zones = new ConcurrentHashMap<>();
+
+		if(Files.exists(path))
+		{
+			for (Map.Entry<String, JsonValue> entry : Json.read(path.toFile()).getObject())
+			{
+				try
+				{
+					zones.put(Long.parseLong(entry.getKey()), ZoneId.of(entry.getValue().getString()));
+				}
+				catch (DateTimeException | NumberFormatException ex)
+				{
+					System.err.println("Ignoring time zone of " + entry.getKey() + " in " + path + ": " + ex.getMessage());
+				}
+			}
+		}
+	}
+
+	ZoneId get(long userID)
+	{
+		return zones.getOrDefault(userID, defaultZone);
+	}
+
+	void set(long userID, ZoneId zone)
+	{
+		zones.put(userID, zone);
+		save();
+	}
+
+	private synchronized void save()
+	{
+		JsonObject obj = new JsonObject();
+		for (Map.Entry<Long, ZoneId> entry : zones.entrySet())
+			obj.put(Long.toString(entry.getKey()), entry.getValue().getId());
+
+		try
+		{
+			Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+			Json.writer(temp.toFile()).setPrettyPrint().put(obj).close();
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException ex)
+		{
+			throw new UncheckedIOException("Error saving time zones", ex);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package com.ch.cryptobot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Hierarchical timing wheel with minute ticks. Items sit in the minute wheel
+// if due within the hour, in the hour wheel if due within the day and in the
+// day wheel within the year, anything later waits in an overflow list.
+// Coarser buckets are poured into finer ones as time reaches them, so adding
+// an item and advancing a tick are both constant time per item.
+// Not thread safe, Scheduler guards it.
+class TimingWheel<T>
+{
+	static final long MINUTE = 60_000L;
+	private static final long[] TICKS = { MINUTE, 60 * MINUTE, 24 * 60 * MINUTE };
+	private static final int[] SIZES = { 60, 24, 366 };
+
+	private final List<List<Entry<T>>[]> levels;
+	private List<Entry<T>> overflow;
+	private long time;
+	private int size;
+
+	@SuppressWarnings("unchecked")
+	TimingWheel(long now)
+	{
+		levels = new ArrayList<>(TICKS.length);
+		for (int size : SIZES)
+			levels.add(new List[size]);
+		overflow = new ArrayList<>();
+		time = now - now % MINUTE;
+	}
+
+	// Returns false if the item is already due and wasn't added
+	boolean add(T item, long expiration)
+	{
+		if(expiration <= time)
+			return false;
+
+		place(new Entry<>(item, expiration));
+		size++;
+		return true;
+	}
+
+	// Moves the wheel forward minute by minute up to now, returning everything that came due
+	List<T> advance(long now)
+	{
+		List<T> due = new ArrayList<>();
+		while (time + MINUTE <= now)
+		{
+			time += MINUTE;
+
+			if(time % TICKS[TICKS.length - 1] == 0)
+			{
+				List<Entry<T>> entries = overflow;
+				overflow = new ArrayList<>();
+				pour(entries, due);
+			}
+			for (int level = TICKS.length - 1; level >= 0; level--)
+			{
+				if(time % TICKS[level] != 0)
+					continue;
+
+				List<Entry<T>>[] buckets = levels.get(level);
+				int index = (int) ((time / TICKS[level]) % SIZES[level]);
+				List<Entry<T>> entries = buckets[index];
+				buckets[index] = null;
+				pour(entries, due);
+			}
+		}
+		return due;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	long getTime()
+	{
+		return time;
+	}
+
+	private void pour(List<Entry<T>> entries, List<T> due)
+	{
+		if(entries == null)
+			return;
+
+		for (Entry<T> entry : entries)
+		{
+			if(entry.expiration <= time)
+			{
+				due.add(entry.item);
+				size--;
+			}
+			else
+				place(entry);
+		}
+	}
+
+	private void place(Entry<T> entry)
+	{
+		// The minute wheel rounds up so nothing fires early, the coarser
+		// wheels round down so items move to a finer wheel before they're due
+		long slot = (entry.expiration + MINUTE - 1) / MINUTE;
+		if(slot - time / MINUTE <= SIZES[0])
+		{
+			bucket(0, slot).add(entry);
+			return;
+		}
+		for (int level = 1; level < TICKS.length; level++)
+		{
+			slot = entry.expiration / TICKS[level];
+			if(slot - time / TICKS[level] <= SIZES[level])
+			{
+				bucket(level, slot).add(entry);
+				return;
+			}
+		}
+		overflow.add(entry);
+	}
+
+	private List<Entry<T>> bucket(int level, long slot)
+	{
+		List<Entry<T>>[] buckets = levels.get(level);
+		int index = (int) (slot % SIZES[level]);
+		if(buckets[index] == null)
+			buckets[index] = new ArrayList<>();
+		return buckets[index];
+	}
+
+	private static class Entry<T>
+	{
+		final T item;
+		final long expiration;
+
+		Entry(T item, long expiration)
+		{
+			this.item = item;
+			this.expiration = expiration;
+		}
+	}
+}
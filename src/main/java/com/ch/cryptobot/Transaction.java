@@ -3,35 +3,44 @@ package com.ch.cryptobot;
 import com.hk.json.JsonObject;
 
 import java.math.BigDecimal;
-import java.util.Date;
+import java.math.RoundingMode;
+import java.util.Objects;
 
 public class Transaction
 {
-	final Date timestamp;
-	final BigDecimal prevMoney, newMoney, price;
-	final BigDecimal prevBalance, newBalance, amount, unitPrice;
+	final long timestamp;
+	// Cents, see Money
+	final long prevMoney, newMoney, price;
+	// Coin units, see Quantity
+	final long prevBalance, newBalance, amount;
+	final double unitPrice;
 	final Crypto crypto;
 	final boolean buy, auto;
 
 	public Transaction(JsonObject obj)
 	{
-		timestamp = new Date(obj.getLong("ts"));
-		prevMoney = new BigDecimal(obj.getString("pm"));
-		newMoney = new BigDecimal(obj.getString("nm"));
-		price = new BigDecimal(obj.getString("p"));
-		prevBalance = new BigDecimal(obj.getString("pb"));
-		newBalance = new BigDecimal(obj.getString("nb"));
-		amount = new BigDecimal(obj.getString("amt"));
-		unitPrice = new BigDecimal(obj.getString("up"));
+		timestamp = obj.getLong("ts");
+		prevMoney = Money.parse(obj.getString("pm"), RoundingMode.UNNECESSARY);
+		newMoney = Money.parse(obj.getString("nm"), RoundingMode.UNNECESSARY);
+		price = Money.parse(obj.getString("p"), RoundingMode.UNNECESSARY);
+		prevBalance = Quantity.parseStored(obj.getString("pb"));
+		newBalance = Quantity.parseStored(obj.getString("nb"));
+		amount = Quantity.parseStored(obj.getString("amt"));
+		unitPrice = Double.parseDouble(obj.getString("up"));
 
 		crypto = Crypto.bySymbol(obj.getString("c"));
 		buy = obj.getBoolean("b");
 		auto = obj.getBoolean("a");
 	}
 
-	public Transaction(BigDecimal prevMoney, BigDecimal newMoney, BigDecimal price, BigDecimal prevBalance, BigDecimal newBalance, BigDecimal amount, BigDecimal unitPrice, Crypto crypto, boolean buy, boolean auto)
+	public Transaction(long prevMoney, long newMoney, long price, long prevBalance, long newBalance, long amount, double unitPrice, Crypto crypto, boolean buy, boolean auto)
 	{
-		this.timestamp = new Date();
+		this(System.currentTimeMillis(), prevMoney, newMoney, price, prevBalance, newBalance, amount, unitPrice, crypto, buy, auto);
+	}
+
+	Transaction(long timestamp, long prevMoney, long newMoney, long price, long prevBalance, long newBalance, long amount, double unitPrice, Crypto crypto, boolean buy, boolean auto)
+	{
+		this.timestamp = timestamp;
 		this.prevMoney = prevMoney;
 		this.newMoney = newMoney;
 		this.price = price;
@@ -44,18 +53,59 @@ public class Transaction
 		this.auto = auto;
 	}
 
+	// One line of an account's trade log, the same fields as toJson in that order
+	Transaction(String record)
+	{
+		String[] fields = record.split(" ");
+		if(fields.length != 11)
+			throw new IllegalArgumentException("Expected 11 fields in trade record: " + record);
+
+		timestamp = Long.parseLong(fields[0]);
+		prevMoney = Money.parse(fields[1], RoundingMode.UNNECESSARY);
+		newMoney = Money.parse(fields[2], RoundingMode.UNNECESSARY);
+		price = Money.parse(fields[3], RoundingMode.UNNECESSARY);
+		prevBalance = Quantity.parseStored(fields[4]);
+		newBalance = Quantity.parseStored(fields[5]);
+		amount = Quantity.parseStored(fields[6]);
+		unitPrice = Double.parseDouble(fields[7]);
+
+		crypto = Objects.requireNonNull(Crypto.bySymbol(fields[8]), fields[8]);
+		buy = fields[9].equals("1");
+		auto = fields[10].equals("1");
+	}
+
+	String toRecord()
+	{
+		StringBuilder sb = new StringBuilder(96);
+
+		sb.append(timestamp).append(' ');
+		Money.appendTo(sb, prevMoney).append(' ');
+		Money.appendTo(sb, newMoney).append(' ');
+		Money.appendTo(sb, price).append(' ');
+		Quantity.appendTo(sb, prevBalance).append(' ');
+		Quantity.appendTo(sb, newBalance).append(' ');
+		Quantity.appendTo(sb, amount).append(' ');
+		sb.append(getUnitPriceString()).append(' ');
+
+		sb.append(crypto.symbol).append(' ');
+		sb.append(buy ? '1' : '0').append(' ');
+		sb.append(auto ? '1' : '0');
+
+		return sb.toString();
+	}
+
 	JsonObject toJson()
 	{
 		JsonObject obj = new JsonObject();
 
-		obj.put("ts", timestamp.getTime());
-		obj.put("pm", prevMoney.toPlainString());
-		obj.put("nm", newMoney.toPlainString());
-		obj.put("p", price.toPlainString());
-		obj.put("pb", prevBalance.toPlainString());
-		obj.put("nb", newBalance.toPlainString());
-		obj.put("amt", amount.toPlainString());
-		obj.put("up", unitPrice.toPlainString());
+		obj.put("ts", timestamp);
+		obj.put("pm", Money.toPlainString(prevMoney));
+		obj.put("nm", Money.toPlainString(newMoney));
+		obj.put("p", Money.toPlainString(price));
+		obj.put("pb", Quantity.toPlainString(prevBalance));
+		obj.put("nb", Quantity.toPlainString(newBalance));
+		obj.put("amt", Quantity.toPlainString(amount));
+		obj.put("up", getUnitPriceString());
 
 		obj.put("c", crypto.symbol);
 		obj.put("b", buy);
@@ -63,4 +113,10 @@ public class Transaction
 
 		return obj;
 	}
+
+	// Same text the unit price had as a BigDecimal
+	String getUnitPriceString()
+	{
+		return BigDecimal.valueOf(unitPrice).toPlainString();
+	}
 }
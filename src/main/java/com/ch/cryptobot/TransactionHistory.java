@@ -0,0 +1,325 @@
+package com.ch.cryptobot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// An account's trades stored column by column in primitive arrays, in chunks
+// of 1024 so growing never copies more than one chunk. The money and balance
+// before a trade aren't stored, they follow from the ones after it.
+// Read it with a Cursor rather than materializing Transactions.
+// Subclasses may keep the chunks elsewhere, see MappedTransactionHistory.
+class TransactionHistory
+{
+	private static final int CHUNK_SHIFT = 10;
+	static final byte BUY = 1, AUTO = 2;
+	private static final Crypto[] CRYPTOS = Crypto.values();
+
+	final List<Chunk> chunks;
+	private final int shift, mask;
+	int size;
+
+	TransactionHistory()
+	{
+		this(CHUNK_SHIFT);
+	}
+
+	TransactionHistory(int shift)
+	{
+		this.shift = shift;
+		mask = (1 << shift) - 1;
+		chunks = new ArrayList<>();
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	void add(Transaction transaction)
+	{
+		add(transaction.timestamp, transaction.newMoney, transaction.price, transaction.newBalance, transaction.amount,
+				transaction.unitPrice, transaction.crypto, transaction.buy, transaction.auto);
+	}
+
+	void add(long timestamp, long newMoney, long price, long newBalance, long amount, double unitPrice, Crypto crypto, boolean buy, boolean auto)
+	{
+		Chunk chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+		int offset = size & mask;
+		if(chunk == null || (offset == 0 && chunk.capacity() == mask + 1))
+		{
+			chunk = newChunk(chunks.size());
+			chunks.add(chunk);
+		}
+		else if(offset == chunk.capacity())
+		{
+			// Only chunks from newChunk below start short of full size, other chunks never get here
+			((ArrayChunk) chunk).grow(Math.min(mask + 1, chunk.capacity() * 2));
+		}
+
+		chunk.set(offset, timestamp, newMoney, price, newBalance, amount, unitPrice,
+				(byte) crypto.ordinal(), (byte) ((buy ? BUY : 0) | (auto ? AUTO : 0)));
+		size++;
+	}
+
+	// The first chunk starts small so accounts with a few trades stay small
+	Chunk newChunk(int index)
+	{
+		return new ArrayChunk(index == 0 ? Math.min(16, mask + 1) : mask + 1);
+	}
+
+	Transaction get(int index)
+	{
+		return cursor(index).toTransaction();
+	}
+
+	// A cursor on the given trade, move it with next() and previous().
+	// cursor(-1) or cursor(size()) start just outside either end
+	Cursor cursor(int index)
+	{
+		Cursor cursor = new Cursor();
+		cursor.moveTo(index);
+		return cursor;
+	}
+
+	// Heap used, chunks kept off the heap don't count
+	long estimateSize()
+	{
+		long bytes = 16 + chunks.size() * 96L;
+		for (Chunk chunk : chunks)
+			bytes += chunk.estimateSize();
+		return bytes;
+	}
+
+	class Cursor
+	{
+		private Chunk chunk;
+		private int index = -1, offset;
+
+		// Returns false once the cursor is past either end
+		boolean moveTo(int index)
+		{
+			this.index = index;
+			if(index < 0 || index >= size)
+			{
+				chunk = null;
+				return false;
+			}
+			chunk = chunks.get(index >>> shift);
+			offset = index & mask;
+			return true;
+		}
+
+		boolean next()
+		{
+			return moveTo(index + 1);
+		}
+
+		boolean previous()
+		{
+			return moveTo(index - 1);
+		}
+
+		int index()
+		{
+			return index;
+		}
+
+		long timestamp()
+		{
+			return chunk.timestamp(offset);
+		}
+
+		long prevMoney()
+		{
+			return isBuy() ? chunk.newMoney(offset) + chunk.price(offset) : chunk.newMoney(offset) - chunk.price(offset);
+		}
+
+		long newMoney()
+		{
+			return chunk.newMoney(offset);
+		}
+
+		long price()
+		{
+			return chunk.price(offset);
+		}
+
+		long prevBalance()
+		{
+			return isBuy() ? chunk.newBalance(offset) - chunk.amount(offset) : chunk.newBalance(offset) + chunk.amount(offset);
+		}
+
+		long newBalance()
+		{
+			return chunk.newBalance(offset);
+		}
+
+		long amount()
+		{
+			return chunk.amount(offset);
+		}
+
+		double unitPrice()
+		{
+			return chunk.unitPrice(offset);
+		}
+
+		Crypto crypto()
+		{
+			return CRYPTOS[chunk.crypto(offset)];
+		}
+
+		boolean isBuy()
+		{
+			return (chunk.flags(offset) & BUY) != 0;
+		}
+
+		boolean isAuto()
+		{
+			return (chunk.flags(offset) & AUTO) != 0;
+		}
+
+		Transaction toTransaction()
+		{
+			return new Transaction(timestamp(), prevMoney(), newMoney(), price(), prevBalance(), newBalance(), amount(),
+					unitPrice(), crypto(), isBuy(), isAuto());
+		}
+	}
+
+	abstract static class Chunk
+	{
+		abstract int capacity();
+
+		abstract long estimateSize();
+
+		abstract void set(int offset, long timestamp, long newMoney, long price, long newBalance, long amount,
+				double unitPrice, byte crypto, byte flags);
+
+		abstract long timestamp(int offset);
+
+		abstract long newMoney(int offset);
+
+		abstract long price(int offset);
+
+		abstract long newBalance(int offset);
+
+		abstract long amount(int offset);
+
+		abstract double unitPrice(int offset);
+
+		abstract byte crypto(int offset);
+
+		abstract byte flags(int offset);
+	}
+
+	private static class ArrayChunk extends Chunk
+	{
+		long[] timestamp, newMoney, price, newBalance, amount;
+		double[] unitPrice;
+		byte[] crypto, flags;
+
+		ArrayChunk(int capacity)
+		{
+			timestamp = new long[capacity];
+			newMoney = new long[capacity];
+			price = new long[capacity];
+			newBalance = new long[capacity];
+			amount = new long[capacity];
+			unitPrice = new double[capacity];
+			crypto = new byte[capacity];
+			flags = new byte[capacity];
+		}
+
+		@Override
+		int capacity()
+		{
+			return timestamp.length;
+		}
+
+		void grow(int capacity)
+		{
+			timestamp = Arrays.copyOf(timestamp, capacity);
+			newMoney = Arrays.copyOf(newMoney, capacity);
+			price = Arrays.copyOf(price, capacity);
+			newBalance = Arrays.copyOf(newBalance, capacity);
+			amount = Arrays.copyOf(amount, capacity);
+			unitPrice = Arrays.copyOf(unitPrice, capacity);
+			crypto = Arrays.copyOf(crypto, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+		}
+
+		@Override
+		long estimateSize()
+		{
+			return capacity() * 50L;
+		}
+
+		@Override
+		void set(int offset, long timestamp, long newMoney, long price, long newBalance, long amount,
+				double unitPrice, byte crypto, byte flags)
+		{
+			this.timestamp[offset] = timestamp;
+			this.newMoney[offset] = newMoney;
+			this.price[offset] = price;
+			this.newBalance[offset] = newBalance;
+			this.amount[offset] = amount;
+			this.unitPrice[offset] = unitPrice;
+			this.crypto[offset] = crypto;
+			this.flags[offset] = flags;
+		}
+
+		@Override
+		long timestamp(int offset)
+		{
+			return timestamp[offset];
+		}
+
+		@Override
+		long newMoney(int offset)
+		{
+			return newMoney[offset];
+		}
+
+		@Override
+		long price(int offset)
+		{
+			return price[offset];
+		}
+
+		@Override
+		long newBalance(int offset)
+		{
+			return newBalance[offset];
+		}
+
+		@Override
+		long amount(int offset)
+		{
+			return amount[offset];
+		}
+
+		@Override
+		double unitPrice(int offset)
+		{
+			return unitPrice[offset];
+		}
+
+		@Override
+		byte crypto(int offset)
+		{
+			return crypto[offset];
+		}
+
+		@Override
+		byte flags(int offset)
+		{
+			return flags[offset];
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.ch.cryptobot;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Little-endian base 128: seven bits a byte, the high bit set on all but the
+// last. Signed values are zigzag encoded first so small negatives stay short.
+final class Varint
+{
+	private Varint() {}
+
+	static void write(ByteArrayOutputStream out, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	static void writeSigned(ByteArrayOutputStream out, long value)
+	{
+		write(out, (value << 1) ^ (value >> 63));
+	}
+
+	static void writeFixed(ByteArrayOutputStream out, long value)
+	{
+		for (int shift = 56; shift >= 0; shift -= 8)
+			out.write((int) (value >>> shift));
+	}
+
+	static void writeString(ByteArrayOutputStream out, String value)
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		write(out, bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	static long read(ByteBuffer in)
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if(b >= 0)
+				return value;
+		}
+		throw new IllegalArgumentException("Varint longer than 10 bytes at " + in.position());
+	}
+
+	static long readSigned(ByteBuffer in)
+	{
+		long value = read(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static int readInt(ByteBuffer in)
+	{
+		return Math.toIntExact(read(in));
+	}
+
+	static String readString(ByteBuffer in)
+	{
+		byte[] bytes = new byte[readInt(in)];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}